@@ -0,0 +1,73 @@
+package com.github.utsavoza.rope;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Streaming short lines onto the end of a rope, as a log does, through an
+ * {@link Rope.Appender}, a {@link Rope.Builder} and {@link Rope#concat(Rope)}, against
+ * appending them to a {@link StringBuilder}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AppendBenchmark {
+
+  @Param({"1000", "100000"})
+  int lineCount;
+
+  String[] lines;
+
+  @Setup public void setUp() {
+    this.lines = Documents.text(this.lineCount * 64).split("(?<=\n)");
+  }
+
+  @Benchmark public Rope appender() {
+    Rope.Appender appender = Rope.from("").asAppender();
+    for (String line : this.lines) {
+      appender.append(line);
+    }
+    return appender.snapshot();
+  }
+
+  /** An append and a snapshot per line, as a log read while it is written. */
+  @Benchmark public Rope appenderSnapshots() {
+    Rope.Appender appender = Rope.from("").asAppender();
+    Rope snapshot = null;
+    for (String line : this.lines) {
+      snapshot = appender.append(line).snapshot();
+    }
+    return snapshot;
+  }
+
+  @Benchmark public Rope builder() {
+    Rope.Builder builder = new Rope.Builder();
+    for (String line : this.lines) {
+      builder.pushString(line);
+    }
+    return builder.build();
+  }
+
+  @Benchmark public Rope concat() {
+    Rope rope = Rope.from("");
+    for (String line : this.lines) {
+      rope = rope.concat(Rope.from(line));
+    }
+    return rope;
+  }
+
+  @Benchmark public String stringBuilder() {
+    StringBuilder sb = new StringBuilder();
+    for (String line : this.lines) {
+      sb.append(line);
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,94 @@
+package com.github.utsavoza.rope;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Building a rope from a String, in bulk or line by line, against copying the String into
+ * a {@link StringBuilder}. The gc profiler counts every byte allocated while building,
+ * the pieces copied into leaves included, not what the rope keeps. The
+ * {@code retainedBytesPerMB} counter of {@link #retainedBytes(Retained)} is the memory a
+ * rope keeps per MB of text once built, see {@link RopeStats#retainedBytes()}, and
+ * {@link #retainedBytesCompactLeaves(Retained)} is the same with Latin-1 leaves. Their
+ * times include walking the tree for its statistics.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BuildBenchmark {
+
+  // the length of the pieces pushed one at a time, about a line
+  private static final int PIECE = 80;
+
+  private static final long MB = 1 << 20;
+
+  @Param({Documents.SMALL, Documents.MEDIUM, Documents.LARGE, Documents.HUGE})
+  int size;
+
+  String text;
+
+  @Setup public void setUp() {
+    this.text = Documents.text(this.size);
+  }
+
+  @Benchmark public Rope from() {
+    return Rope.from(this.text);
+  }
+
+  @Benchmark @Fork(jvmArgsAppend = "-Dcom.github.utsavoza.rope.compactLeaves=true")
+  public Rope fromCompactLeaves() {
+    return Rope.from(this.text);
+  }
+
+  @Benchmark public Rope retainedBytes(Retained retained) {
+    Rope rope = Rope.from(this.text);
+    retained.retainedBytesPerMB = rope.stats().retainedBytes() * MB / this.size;
+    return rope;
+  }
+
+  @Benchmark @Fork(jvmArgsAppend = "-Dcom.github.utsavoza.rope.compactLeaves=true")
+  public Rope retainedBytesCompactLeaves(Retained retained) {
+    return this.retainedBytes(retained);
+  }
+
+  @Benchmark public Rope fromParallel() {
+    return Rope.from(this.text, ForkJoinPool.commonPool());
+  }
+
+  @Benchmark public Rope builderPushString() {
+    Rope.Builder builder = new Rope.Builder();
+    for (int i = 0; i < this.size; i += PIECE) {
+      builder.pushString(this.text.substring(i, Math.min(i + PIECE, this.size)));
+    }
+    return builder.build();
+  }
+
+  @Benchmark public String stringBuilderAppend() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < this.size; i += PIECE) {
+      sb.append(this.text, i, Math.min(i + PIECE, this.size));
+    }
+    return sb.toString();
+  }
+
+  @Benchmark public String stringCopy() {
+    return new StringBuilder(this.text).toString();
+  }
+
+  /** The memory the last rope built keeps, reported next to the time of each iteration. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Retained {
+    public long retainedBytesPerMB;
+  }
+}
@@ -0,0 +1,98 @@
+package com.github.utsavoza.rope;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Comparing, hashing, searching and diffing ropes by content, against the same operations
+ * on Strings. The ropes compared are equal but split into leaves differently, so that
+ * equals has to read them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ContentBenchmark {
+
+  // occurs only once, at the end of the document
+  private static final String NEEDLE = "needle in the haystack";
+
+  @Param({Documents.SMALL, Documents.MEDIUM, Documents.LARGE, Documents.HUGE})
+  int size;
+
+  String text;
+  String textCopy;
+  Rope rope;
+  Rope ropeCopy;
+  Rope edited;
+  Pattern pattern;
+
+  @Setup public void setUp() {
+    this.text = Documents.text(this.size - NEEDLE.length()) + NEEDLE;
+    this.textCopy = new String(this.text.toCharArray());
+    this.rope = Rope.from(this.text);
+    this.ropeCopy = Rope.from("x" + this.text).slice(1, this.size + 1);
+    this.edited = this.rope.replace(this.size / 2, this.size / 2 + 4, "edit");
+    this.pattern = Pattern.compile("needle\\s+\\w+");
+  }
+
+  @Benchmark public boolean ropeEquals() {
+    return this.rope.equals(this.ropeCopy);
+  }
+
+  @Benchmark public boolean stringEquals() {
+    return this.text.equals(this.textCopy);
+  }
+
+  /** The hash of a rope after an edit, computed from the cached hashes of the subtrees. */
+  @Benchmark public int hashCodeAfterEdit() {
+    return this.rope.replace(this.size / 2, this.size / 2 + 4, "edit").hashCode();
+  }
+
+  /** The hash of a String, computed as String#hashCode does before it is cached. */
+  @Benchmark public int stringHashCode() {
+    int hash = 0;
+    for (int i = 0; i < this.text.length(); i++) {
+      hash = 31 * hash + this.text.charAt(i);
+    }
+    return hash;
+  }
+
+  @Benchmark public int indexOf() {
+    return this.rope.indexOf(NEEDLE);
+  }
+
+  @Benchmark public int stringIndexOf() {
+    return this.text.indexOf(NEEDLE);
+  }
+
+  @Benchmark public int indexOfChar() {
+    return this.rope.indexOf("#");
+  }
+
+  @Benchmark public int stringIndexOfChar() {
+    return this.text.indexOf('#');
+  }
+
+  @Benchmark public int regex() {
+    Matcher matcher = this.pattern.matcher(this.rope);
+    return matcher.find() ? matcher.start() : -1;
+  }
+
+  @Benchmark public int stringRegex() {
+    Matcher matcher = this.pattern.matcher(this.text);
+    return matcher.find() ? matcher.start() : -1;
+  }
+
+  @Benchmark public Delta diff() {
+    return this.rope.diff(this.edited);
+  }
+}
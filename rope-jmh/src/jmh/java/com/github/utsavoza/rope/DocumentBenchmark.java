@@ -0,0 +1,62 @@
+package com.github.utsavoza.rope;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A {@link Document} shared by reader threads taking snapshots and reading them, and by
+ * writer threads replacing text, which contend on its compare-and-set. The groups differ
+ * in their number of writers, so that the cost of the retries shows in the time per edit.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DocumentBenchmark {
+
+  @Param({Documents.MEDIUM, Documents.LARGE})
+  int size;
+
+  Document document;
+
+  @Setup public void setUp() {
+    this.document = new Document(Rope.from(Documents.text(this.size)));
+  }
+
+  /** A snapshot of the document, read at a random offset. */
+  @Benchmark @Group("oneWriter") @GroupThreads(3) public char readWithOneWriter() {
+    return this.read();
+  }
+
+  /** An edit replacing as many chars as it inserts, so that the document keeps its size. */
+  @Benchmark @Group("oneWriter") @GroupThreads(1) public Rope writeWithOneWriter() {
+    return this.write();
+  }
+
+  @Benchmark @Group("fourWriters") @GroupThreads(4) public char readWithFourWriters() {
+    return this.read();
+  }
+
+  @Benchmark @Group("fourWriters") @GroupThreads(4) public Rope writeWithFourWriters() {
+    return this.write();
+  }
+
+  private char read() {
+    Rope snapshot = this.document.snapshot();
+    return snapshot.charAt(ThreadLocalRandom.current().nextInt(snapshot.length()));
+  }
+
+  private Rope write() {
+    int offset = ThreadLocalRandom.current().nextInt(this.size - 8);
+    return this.document.replace(offset, offset + 8, "replaced");
+  }
+}
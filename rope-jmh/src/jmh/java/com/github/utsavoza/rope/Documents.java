@@ -0,0 +1,52 @@
+package com.github.utsavoza.rope;
+
+import java.util.Random;
+
+/**
+ * Deterministic documents for the benchmarks, so that runs are comparable across builds.
+ * A document is made of lines of words of varying length, a tenth of which end with
+ * "\r\n" and the rest with "\n".
+ */
+final class Documents {
+
+  // the document sizes in chars, from a single leaf to a large file
+  static final String SMALL = "1024";
+  static final String MEDIUM = "65536";
+  static final String LARGE = "1048576";
+  static final String HUGE = "16777216";
+
+  private static final String[] WORDS = {
+      "rope", "leaf", "node", "tree", "line", "char", "slice", "concat", "balance",
+      "height", "offset", "newline", "editor", "buffer", "document", "a", "of", "the"
+  };
+
+  private Documents() {
+  }
+
+  /** Returns a document of exactly {@code length} chars. */
+  static String text(int length) {
+    Random random = new Random(42);
+    StringBuilder sb = new StringBuilder(length + 64);
+    int line = 0;
+    while (sb.length() < length) {
+      int words = 1 + random.nextInt(16);
+      for (int i = 0; i < words; i++) {
+        sb.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+      }
+      sb.append(line++);
+      sb.append(line % 10 == 0 ? "\r\n" : "\n");
+    }
+    sb.setLength(length);
+    return sb.toString();
+  }
+
+  /** Returns {@code count} offsets in [0, bound), spread pseudo-randomly. */
+  static int[] offsets(int count, int bound) {
+    Random random = new Random(7);
+    int[] offsets = new int[count];
+    for (int i = 0; i < count; i++) {
+      offsets[i] = random.nextInt(bound);
+    }
+    return offsets;
+  }
+}
@@ -0,0 +1,92 @@
+package com.github.utsavoza.rope;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Concatenating, slicing and replacing, against the same edits on a String or a
+ * {@link StringBuilder}. The edits of a rope should cost about the same at every size,
+ * whereas those of a String grow with it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EditBenchmark {
+
+  // the number of edits of the batch benchmarks
+  private static final int EDITS = 100;
+
+  @Param({Documents.SMALL, Documents.MEDIUM, Documents.LARGE, Documents.HUGE})
+  int size;
+
+  String text;
+  Rope rope;
+  Rope firstHalf;
+  Rope secondHalf;
+  int[] offsets;
+
+  @Setup public void setUp() {
+    this.text = Documents.text(this.size);
+    this.rope = Rope.from(this.text);
+    this.firstHalf = Rope.from(this.text.substring(0, this.size / 2));
+    this.secondHalf = Rope.from(this.text.substring(this.size / 2));
+    this.offsets = Documents.offsets(EDITS, this.size - 8);
+  }
+
+  @Benchmark public Rope concat() {
+    return this.firstHalf.concat(this.secondHalf);
+  }
+
+  @Benchmark public String stringConcat() {
+    return this.text.substring(0, this.size / 2).concat(this.text.substring(this.size / 2));
+  }
+
+  @Benchmark public Rope slice() {
+    return this.rope.slice(this.size / 4, this.size / 4 * 3);
+  }
+
+  @Benchmark public String substring() {
+    return this.text.substring(this.size / 4, this.size / 4 * 3);
+  }
+
+  @Benchmark public Rope replace() {
+    int start = this.size / 2;
+    return this.rope.replace(start, start + 8, "replaced");
+  }
+
+  @Benchmark public String stringBuilderReplace() {
+    int start = this.size / 2;
+    return new StringBuilder(this.text).replace(start, start + 8, "replaced").toString();
+  }
+
+  @Benchmark public Rope replaceBatch() {
+    Rope rope = this.rope;
+    for (int offset : this.offsets) {
+      rope = rope.replace(offset, offset + 8, "replaced");
+    }
+    return rope;
+  }
+
+  @Benchmark public Rope transientReplaceBatch() {
+    Rope.Transient editor = this.rope.asTransient();
+    for (int offset : this.offsets) {
+      editor.replace(offset, offset + 8, "replaced");
+    }
+    return editor.persistent();
+  }
+
+  @Benchmark public String stringBuilderReplaceBatch() {
+    StringBuilder sb = new StringBuilder(this.text);
+    for (int offset : this.offsets) {
+      sb.replace(offset, offset + 8, "replaced");
+    }
+    return sb.toString();
+  }
+}
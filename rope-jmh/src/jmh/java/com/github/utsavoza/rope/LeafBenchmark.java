@@ -0,0 +1,63 @@
+package com.github.utsavoza.rope;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import static com.github.utsavoza.rope.Node.MAX_LEAF;
+import static com.github.utsavoza.rope.Node.MIN_LEAF;
+
+/**
+ * Merging and splitting leaves, which concatenation and edits do at the seams of the
+ * trees, against concatenating the same Strings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LeafBenchmark {
+
+  String text;
+  Node shortLeaf;
+  Node otherShortLeaf;
+  Node longLeaf;
+  Node tree;
+  String bulk;
+
+  @Setup public void setUp() {
+    this.text = Documents.text(MAX_LEAF);
+    this.shortLeaf = Node.fromStringPiece(this.text.substring(0, MIN_LEAF / 2));
+    this.otherShortLeaf = Node.fromStringPiece(this.text.substring(MIN_LEAF / 2, MIN_LEAF));
+    this.longLeaf = Node.fromStringPiece(this.text.substring(0, MAX_LEAF - 100));
+    this.tree = Node.fromString(Documents.text(64 * MAX_LEAF));
+    this.bulk = Documents.text(16 * MAX_LEAF);
+  }
+
+  /** Two short leaves merged into one. */
+  @Benchmark public Node mergeLeaves() {
+    return Node.mergeLeaves(this.shortLeaf, this.otherShortLeaf);
+  }
+
+  /** A short and a long leaf merged, then split again as they exceed MAX_LEAF. */
+  @Benchmark public Node mergeAndSplitLeaves() {
+    return Node.mergeLeaves(this.shortLeaf, this.longLeaf);
+  }
+
+  @Benchmark public String stringConcat() {
+    return this.shortLeaf.getLeaf().concat(this.longLeaf.getLeaf());
+  }
+
+  /** A short leaf appended to a tree, merged into its last leaf on the way down. */
+  @Benchmark public Node concatLeafToTree() {
+    return Node.concat(this.tree, this.shortLeaf);
+  }
+
+  /** A String of 16 leaves split at char boundaries by the builder. */
+  @Benchmark public Node splitBulk() {
+    return Node.fromString(this.bulk);
+  }
+}
@@ -0,0 +1,231 @@
+package com.github.utsavoza.rope;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reading a rope: random access, which chases pointers from the root to a leaf on every
+ * lookup, sequential scans, streams, line lookups and writing the contents out, against
+ * the same reads of a String. Counting line breaks is measured against the regex it
+ * replaced. The {@code CompactLeaves} variants read a rope of Latin-1 leaves, whose chars
+ * are read from their bytes without building their Strings. With the gc profiler,
+ * {@code gc.alloc.rate.norm} of {@link #writeToChannel()} stays the same at every size,
+ * while {@link #writeToChannelGetBytes()} allocates the String and its encoded bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReadBenchmark {
+
+  // the number of lookups of the random access benchmarks
+  private static final int LOOKUPS = 1024;
+
+  @Param({Documents.SMALL, Documents.MEDIUM, Documents.LARGE, Documents.HUGE})
+  int size;
+
+  String text;
+  Rope rope;
+  int[] offsets;
+  int[] lines;
+  CountingWriter sink;
+  CountingChannel channel;
+
+  @Setup public void setUp() {
+    this.text = Documents.text(this.size);
+    this.rope = Rope.from(this.text);
+    this.offsets = Documents.offsets(LOOKUPS, this.size);
+    this.lines = Documents.offsets(LOOKUPS, this.rope.lineCount());
+    this.sink = new CountingWriter();
+    this.channel = new CountingChannel();
+  }
+
+  @Benchmark public String toStringRope() {
+    return this.rope.toString();
+  }
+
+  @Benchmark public String toStringBuilder() {
+    return new StringBuilder(this.text).toString();
+  }
+
+  @Benchmark @OperationsPerInvocation(LOOKUPS) public int charAt() {
+    int sum = 0;
+    for (int offset : this.offsets) {
+      sum += this.rope.charAt(offset);
+    }
+    return sum;
+  }
+
+  @Benchmark @OperationsPerInvocation(LOOKUPS)
+  @Fork(jvmArgsAppend = "-Dcom.github.utsavoza.rope.compactLeaves=true")
+  public int charAtCompactLeaves() {
+    return this.charAt();
+  }
+
+  @Benchmark @OperationsPerInvocation(LOOKUPS) public int stringCharAt() {
+    int sum = 0;
+    for (int offset : this.offsets) {
+      sum += this.text.charAt(offset);
+    }
+    return sum;
+  }
+
+  @Benchmark public int cursorScan() {
+    int sum = 0;
+    Rope.Cursor cursor = this.rope.cursor();
+    while (cursor.hasNext()) {
+      sum += cursor.next();
+    }
+    return sum;
+  }
+
+  @Benchmark @Fork(jvmArgsAppend = "-Dcom.github.utsavoza.rope.compactLeaves=true")
+  public int cursorScanCompactLeaves() {
+    return this.cursorScan();
+  }
+
+  @Benchmark public int stringScan() {
+    int sum = 0;
+    for (int i = 0; i < this.text.length(); i++) {
+      sum += this.text.charAt(i);
+    }
+    return sum;
+  }
+
+  @Benchmark public int chars() {
+    return this.rope.chars().sum();
+  }
+
+  @Benchmark public int stringChars() {
+    return this.text.chars().sum();
+  }
+
+  @Benchmark public long chunks() {
+    return this.rope.chunks().count();
+  }
+
+  @Benchmark public long lines() {
+    return this.rope.lines().count();
+  }
+
+  @Benchmark public long bufferedReaderLines() {
+    return new BufferedReader(new StringReader(this.text)).lines().count();
+  }
+
+  @Benchmark @OperationsPerInvocation(LOOKUPS) public int offsetOfLine() {
+    int sum = 0;
+    for (int line : this.lines) {
+      sum += this.rope.offsetOfLine(line);
+    }
+    return sum;
+  }
+
+  @Benchmark @OperationsPerInvocation(LOOKUPS)
+  @Fork(jvmArgsAppend = "-Dcom.github.utsavoza.rope.compactLeaves=true")
+  public int offsetOfLineCompactLeaves() {
+    return this.offsetOfLine();
+  }
+
+  @Benchmark @OperationsPerInvocation(LOOKUPS) public int lineOfOffset() {
+    int sum = 0;
+    for (int offset : this.offsets) {
+      sum += this.rope.lineOfOffset(offset);
+    }
+    return sum;
+  }
+
+  @Benchmark public int countNewlines() {
+    return Util.countNewlines(this.text, 0, this.size);
+  }
+
+  /** The regex match that leaves counted their line breaks with before countNewlines. */
+  @Benchmark public int countNewlinesRegex() {
+    return Util.countOccurrence(this.text, Util.NEW_LINE);
+  }
+
+  @Benchmark public long writeTo() throws IOException {
+    this.rope.writeTo(this.sink);
+    return this.sink.count;
+  }
+
+  @Benchmark public long writeToString() throws IOException {
+    this.sink.write(this.rope.toString());
+    return this.sink.count;
+  }
+
+  @Benchmark public long writeToChannel() throws IOException {
+    this.rope.writeTo(this.channel, StandardCharsets.UTF_8);
+    return this.channel.count;
+  }
+
+  @Benchmark public long writeToChannelGetBytes() throws IOException {
+    this.channel.write(ByteBuffer.wrap(this.rope.toString().getBytes(StandardCharsets.UTF_8)));
+    return this.channel.count;
+  }
+
+  // a writer discarding what it is given, only counting the chars
+  static final class CountingWriter extends Writer {
+    long count;
+
+    @Override public void write(char[] chars, int offset, int length) {
+      this.count += length;
+    }
+
+    @Override public void write(String s) {
+      this.count += s.length();
+    }
+
+    @Override public void flush() {
+    }
+
+    @Override public void close() {
+    }
+  }
+
+  // a channel discarding what it is given, only counting the bytes, gathering so that
+  // writeTo writes its buffers at once
+  static final class CountingChannel implements GatheringByteChannel {
+    long count;
+
+    @Override public long write(ByteBuffer[] buffers, int offset, int length) {
+      long written = 0;
+      for (int i = offset; i < offset + length; i++) {
+        written += this.write(buffers[i]);
+      }
+      return written;
+    }
+
+    @Override public long write(ByteBuffer[] buffers) {
+      return this.write(buffers, 0, buffers.length);
+    }
+
+    @Override public int write(ByteBuffer buffer) {
+      int length = buffer.remaining();
+      buffer.position(buffer.limit());
+      this.count += length;
+      return length;
+    }
+
+    @Override public boolean isOpen() {
+      return true;
+    }
+
+    @Override public void close() {
+    }
+  }
+}
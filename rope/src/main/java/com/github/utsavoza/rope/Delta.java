@@ -0,0 +1,402 @@
+package com.github.utsavoza.rope;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A batch of edits to a {@link Rope}, each replacing an {@link Interval} of the rope it
+ * is applied to (its base) with a new text. The edits are kept sorted and do not overlap,
+ * so that the whole batch is applied in a single left-to-right pass that reuses the
+ * subtrees of the base lying between the edits.
+ *
+ * <p><strong>Examples:</strong>
+ * <pre>
+ *   Rope a = Rope.from("hello world");
+ *   Delta delta = new Delta.Builder(a.length())
+ *       .replace(Interval.ofClosedOpen(0, 5), "goodbye")
+ *       .insert(11, "!")
+ *       .build();
+ *   assertEquals(delta.apply(a).toString(), "goodbye world!");
+ * </pre>
+ */
+public final class Delta {
+
+  private final int baseLength;
+  private final List<Edit> edits;
+
+  private Delta(int baseLength, List<Edit> edits) {
+    this.baseLength = baseLength;
+    this.edits = edits;
+  }
+
+  /** The length of the rope this delta applies to. */
+  public int baseLength() {
+    return this.baseLength;
+  }
+
+  /** The length of the rope this delta produces. */
+  public int newLength() {
+    int newLength = this.baseLength;
+    for (Edit edit : this.edits) {
+      newLength += edit.shift();
+    }
+    return newLength;
+  }
+
+  /** The edits of this delta, sorted by the position at which they apply. */
+  public List<Edit> edits() {
+    return Collections.unmodifiableList(this.edits);
+  }
+
+  public boolean isIdentity() {
+    return this.edits.isEmpty();
+  }
+
+  /**
+   * Applies this delta to {@code rope} and returns the resulting rope. The parts of
+   * {@code rope} between the edits are shared with the result.
+   */
+  public Rope apply(Rope rope) {
+    if (rope.length() != this.baseLength) {
+      throw new IllegalArgumentException(
+          "delta of base length " + this.baseLength + " applied to rope of length "
+              + rope.length());
+    }
+    if (this.edits.isEmpty()) {
+      return rope;
+    }
+    Rope.Builder builder = new Rope.Builder();
+    int last = 0;
+    for (Edit edit : this.edits) {
+      builder.pushCharSequence(rope, last, edit.start);
+      builder.pushRope(edit.text);
+      last = edit.end;
+    }
+    builder.pushCharSequence(rope, last, this.baseLength);
+    return builder.build();
+  }
+
+  /**
+   * Returns a delta equivalent to applying this delta and then {@code next}, which must
+   * apply to the rope this delta produces.
+   */
+  public Delta compose(Delta next) {
+    if (next.baseLength != this.newLength()) {
+      throw new IllegalArgumentException(
+          "delta of base length " + next.baseLength + " composed with delta of new length "
+              + this.newLength());
+    }
+    List<Segment> segments = this.segments();
+    List<Segment> composed = new ArrayList<>();
+    int index = 0;
+    int segmentStart = 0;
+    for (Segment nextSegment : next.segments()) {
+      if (nextSegment.text != null) {
+        composed.add(nextSegment);
+        continue;
+      }
+      // map the copied range onto the segments this delta produced
+      while (segmentStart + segments.get(index).length() <= nextSegment.start) {
+        segmentStart += segments.get(index).length();
+        index++;
+      }
+      while (segmentStart < nextSegment.end) {
+        Segment segment = segments.get(index);
+        int from = Math.max(nextSegment.start, segmentStart) - segmentStart;
+        int to = Math.min(nextSegment.end, segmentStart + segment.length()) - segmentStart;
+        composed.add(segment.slice(from, to));
+        if (segmentStart + segment.length() > nextSegment.end) {
+          break;
+        }
+        segmentStart += segment.length();
+        index++;
+      }
+    }
+    return Delta.fromSegments(this.baseLength, composed);
+  }
+
+  /**
+   * Transforms {@code offset} of the base rope into the corresponding offset of the rope
+   * this delta produces. An offset within a replaced interval maps to the start of its
+   * replacement, or to its end if {@code after} is true, and so does an offset at which
+   * text is inserted.
+   */
+  public int transform(int offset, boolean after) {
+    this.checkOffset(offset);
+    int shift = 0;
+    for (Edit edit : this.edits) {
+      if (offset < edit.start) {
+        break;
+      }
+      if (edit.isBefore(offset, after)) {
+        shift += edit.shift();
+        continue;
+      }
+      return edit.start + shift + (after ? edit.text.length() : 0);
+    }
+    return offset + shift;
+  }
+
+  /**
+   * Transforms each of {@code offsets}, which must be in ascending order, as
+   * {@link #transform(int, boolean)} does, and returns the transformed offsets. The edits
+   * are walked once for all of the offsets, so that transforming n offsets through m edits
+   * is O(n + m) rather than O(n * m).
+   */
+  public int[] transform(int[] offsets, boolean after) {
+    int[] transformed = new int[offsets.length];
+    int index = 0;
+    int shift = 0;
+    for (int i = 0; i < offsets.length; i++) {
+      int offset = offsets[i];
+      this.checkOffset(offset);
+      if (i > 0 && offset < offsets[i - 1]) {
+        throw new IllegalArgumentException(
+            "offset " + offset + " follows greater offset " + offsets[i - 1]);
+      }
+      // an edit before an offset is also before the offsets greater than it
+      while (index < this.edits.size() && this.edits.get(index).isBefore(offset, after)) {
+        shift += this.edits.get(index).shift();
+        index++;
+      }
+      Edit edit = index < this.edits.size() ? this.edits.get(index) : null;
+      transformed[i] = edit != null && offset >= edit.start
+          ? edit.start + shift + (after ? edit.text.length() : 0)
+          : offset + shift;
+    }
+    return transformed;
+  }
+
+  private void checkOffset(int offset) {
+    if (offset < 0 || offset > this.baseLength) {
+      throw new IllegalArgumentException(
+          "offset " + offset + " is out of bounds for delta of base length " + this.baseLength);
+    }
+  }
+
+  // the document this delta produces, as a sequence of copies from the base and insertions
+  private List<Segment> segments() {
+    List<Segment> segments = new ArrayList<>();
+    int last = 0;
+    for (Edit edit : this.edits) {
+      if (edit.start > last) {
+        segments.add(Segment.copy(last, edit.start));
+      }
+      if (edit.text.length() > 0) {
+        segments.add(Segment.insert(edit.text));
+      }
+      last = edit.end;
+    }
+    if (this.baseLength > last) {
+      segments.add(Segment.copy(last, this.baseLength));
+    }
+    return segments;
+  }
+
+  private static Delta fromSegments(int baseLength, List<Segment> segments) {
+    Builder builder = new Builder(baseLength);
+    int last = 0;
+    Rope.Builder inserted = null;
+    for (Segment segment : segments) {
+      if (segment.text != null) {
+        if (inserted == null) {
+          inserted = new Rope.Builder();
+        }
+        inserted.pushRope(segment.text);
+        continue;
+      }
+      if (segment.start > last || inserted != null) {
+        builder.replace(last, segment.start, inserted == null ? Rope.from("") : inserted.build());
+        inserted = null;
+      }
+      last = segment.end;
+    }
+    if (last < baseLength || inserted != null) {
+      builder.replace(last, baseLength, inserted == null ? Rope.from("") : inserted.build());
+    }
+    return builder.build();
+  }
+
+  @Override public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Delta)) {
+      return false;
+    }
+    Delta otherDelta = (Delta) o;
+    return this.baseLength == otherDelta.baseLength
+        && this.edits.equals(otherDelta.edits);
+  }
+
+  @Override public int hashCode() {
+    int hash = 17;
+    hash = 31 * hash + this.baseLength;
+    hash = 31 * hash + this.edits.hashCode();
+    return hash;
+  }
+
+  @Override public String toString() {
+    return "Delta: {"
+        + "\n\tbaseLength: " + this.baseLength
+        + "\n\tedits: " + this.edits
+        + "\n}";
+  }
+
+  /** Replacement of the interval [start, end) of the base rope with a text. */
+  public static final class Edit {
+
+    private final int start;
+    private final int end;
+    private final Rope text;
+
+    private Edit(int start, int end, Rope text) {
+      this.start = start;
+      this.end = end;
+      this.text = text;
+    }
+
+    /** The replaced interval of the base rope, closed at start and open at end. */
+    public Interval interval() {
+      return Interval.ofClosedOpen(this.start, this.end);
+    }
+
+    /** The text that replaces the interval. */
+    public Rope text() {
+      return this.text;
+    }
+
+    // the change in length the edit makes
+    private int shift() {
+      return this.text.length() - (this.end - this.start);
+    }
+
+    // whether the edit lies entirely before offset, which transforms past its text
+    private boolean isBefore(int offset, boolean after) {
+      return offset > this.end || (offset == this.end && (this.start < this.end || after));
+    }
+
+    @Override public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Edit)) {
+        return false;
+      }
+      Edit otherEdit = (Edit) o;
+      return this.start == otherEdit.start
+          && this.end == otherEdit.end
+          && this.text.equals(otherEdit.text);
+    }
+
+    @Override public int hashCode() {
+      int hash = 17;
+      hash = 31 * hash + this.start;
+      hash = 31 * hash + this.end;
+      hash = 31 * hash + this.text.hashCode();
+      return hash;
+    }
+
+    @Override public String toString() {
+      return "Edit: [" + this.start + ", " + this.end + ") -> \"" + this.text + "\"";
+    }
+  }
+
+  // This class solely exists to hold a piece of the document produced by a delta
+  private static final class Segment {
+    // the copied interval of the base, if text is null
+    final int start;
+    final int end;
+    final Rope text;
+
+    private Segment(int start, int end, Rope text) {
+      this.start = start;
+      this.end = end;
+      this.text = text;
+    }
+
+    static Segment copy(int start, int end) {
+      return new Segment(start, end, null);
+    }
+
+    static Segment insert(Rope text) {
+      return new Segment(0, 0, text);
+    }
+
+    int length() {
+      return this.text == null ? this.end - this.start : this.text.length();
+    }
+
+    Segment slice(int from, int to) {
+      if (this.text == null) {
+        return copy(this.start + from, this.start + to);
+      }
+      return insert(this.text.slice(from, to));
+    }
+  }
+
+  /**
+   * Builder utility to create an instance of Delta. The edits may be pushed in any order,
+   * but must not overlap. Insertions at the same offset are applied in the order they
+   * were pushed.
+   */
+  public static class Builder {
+
+    private final int baseLength;
+    private final List<Edit> edits = new ArrayList<>();
+
+    public Builder(int baseLength) {
+      if (baseLength < 0) {
+        throw new IllegalArgumentException("negative base length " + baseLength);
+      }
+      this.baseLength = baseLength;
+    }
+
+    /** Replaces {@code interval} of the base rope with {@code text}. */
+    public Builder replace(Interval interval, String text) {
+      return replace(interval, Rope.from(text));
+    }
+
+    /** Replaces {@code interval} of the base rope with {@code text}. */
+    public Builder replace(Interval interval, Rope text) {
+      int start = interval.isStartClosed() ? interval.start() : interval.start() + 1;
+      int end = interval.isEndClosed() ? interval.end() + 1 : interval.end();
+      return replace(start, Math.max(start, end), text);
+    }
+
+    /** Deletes {@code interval} of the base rope. */
+    public Builder delete(Interval interval) {
+      return replace(interval, Rope.from(""));
+    }
+
+    /** Inserts {@code text} at {@code offset} of the base rope. */
+    public Builder insert(int offset, String text) {
+      return replace(offset, offset, Rope.from(text));
+    }
+
+    private Builder replace(int start, int end, Rope text) {
+      if (start < 0 || end > this.baseLength) {
+        throw new IllegalArgumentException(
+            "[" + start + ", " + end + ") interval is out of bounds for delta");
+      }
+      this.edits.add(new Edit(start, end, text));
+      return this;
+    }
+
+    public Delta build() {
+      List<Edit> edits = new ArrayList<>(this.edits);
+      // stable, so that insertions at the same offset keep their order
+      edits.sort(Comparator.comparingInt((Edit edit) -> edit.start)
+          .thenComparingInt(edit -> edit.end == edit.start ? 0 : 1));
+      for (int i = 1; i < edits.size(); i++) {
+        if (edits.get(i).start < edits.get(i - 1).end) {
+          throw new IllegalArgumentException(
+              edits.get(i - 1) + " overlaps with " + edits.get(i));
+        }
+      }
+      return new Delta(this.baseLength, edits);
+    }
+  }
+}
@@ -0,0 +1,366 @@
+package com.github.utsavoza.rope;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.utsavoza.rope.Node.MAX_LEAF;
+
+/**
+ * Computes the {@link Delta} turning the text of one tree into that of another, for trees
+ * derived from each other, which share most of their nodes. The common prefix and suffix
+ * of the texts are found by walking both trees in step, skipping the subtrees they share
+ * by reference, and the remaining middle is split further around a subtree found in both.
+ * A char level diff is then run on the short ranges that are left, so that a small edit
+ * of a large rope is found in O(edit * log n).
+ */
+final class Diff {
+
+  // the longest ranges, in chars, on which a char level diff is run
+  private static final int MAX_CHAR_DIFF = 4 * MAX_LEAF;
+  // the most char edits searched for, before reporting a single replacement instead
+  private static final int MAX_CHAR_EDITS = 256;
+
+  private final Node base;
+  private final Node target;
+  private final Delta.Builder builder;
+
+  private Diff(Node base, Node target) {
+    this.base = base;
+    this.target = target;
+    this.builder = new Delta.Builder(base.getLength());
+  }
+
+  /** Returns the delta that turns the text of {@code base} into that of {@code target}. */
+  static Delta compute(Node base, Node target) {
+    Diff diff = new Diff(base, target);
+    diff.diff(0, base.getLength(), 0, target.getLength());
+    return diff.builder.build();
+  }
+
+  /**
+   * Returns whether the {@code length} chars of {@code node} from {@code start} are those
+   * of {@code other} from {@code otherStart}. Subtrees met at the same offset in both are
+   * skipped, so that chars are only compared where the trees diverge.
+   */
+  static boolean rangeEquals(Node node, int start, Node other, int otherStart, int length) {
+    return commonLength(node, start, start + length, other, otherStart, otherStart + length, true)
+        == length;
+  }
+
+  private void diff(int baseStart, int baseEnd, int targetStart, int targetEnd) {
+    while (true) {
+      int prefix =
+          commonLength(this.base, baseStart, baseEnd, this.target, targetStart, targetEnd, true);
+      baseStart += prefix;
+      targetStart += prefix;
+      int suffix =
+          commonLength(this.base, baseStart, baseEnd, this.target, targetStart, targetEnd, false);
+      baseEnd -= suffix;
+      targetEnd -= suffix;
+      if (baseStart == baseEnd && targetStart == targetEnd) {
+        return;
+      }
+      if (baseStart == baseEnd || targetStart == targetEnd) {
+        this.replace(baseStart, baseEnd, targetStart, targetEnd);
+        return;
+      }
+      int[] anchor = this.findAnchor(baseStart, baseEnd, targetStart, targetEnd);
+      if (anchor == null) {
+        this.charDiff(baseStart, baseEnd, targetStart, targetEnd);
+        return;
+      }
+      // diff the texts before the shared subtree, then loop on the texts after it
+      this.diff(baseStart, anchor[0], targetStart, anchor[1]);
+      baseStart = anchor[0] + anchor[2];
+      targetStart = anchor[1] + anchor[2];
+    }
+  }
+
+  /**
+   * Returns the length of the common prefix, or suffix if {@code forward} is false, of the
+   * given ranges of the base and the target.
+   */
+  private static int commonLength(Node base, int baseStart, int baseEnd,
+      Node target, int targetStart, int targetEnd, boolean forward) {
+    Walk baseWalk = new Walk(base, baseStart, baseEnd, forward);
+    Walk targetWalk = new Walk(target, targetStart, targetEnd, forward);
+    int common = 0;
+    while (!baseWalk.isDone() && !targetWalk.isDone()) {
+      Piece piece = baseWalk.peek();
+      Piece targetPiece = targetWalk.peek();
+      if (piece.node == targetPiece.node
+          && piece.from == targetPiece.from
+          && piece.to == targetPiece.to) {
+        int count = piece.length();
+        common += count;
+        baseWalk.advance(count);
+        targetWalk.advance(count);
+      } else if (!piece.node.isLeaf()
+          && (targetPiece.node.isLeaf() || piece.length() >= targetPiece.length())) {
+        baseWalk.expand();
+      } else if (!targetPiece.node.isLeaf()) {
+        targetWalk.expand();
+      } else {
+        int count = Math.min(piece.length(), targetPiece.length());
+        int matching = matchingLength(piece, targetPiece, count, forward);
+        common += matching;
+        if (matching < count) {
+          break;
+        }
+        baseWalk.advance(count);
+        targetWalk.advance(count);
+      }
+    }
+    return common;
+  }
+
+  // the number of equal chars at the front (or back) of two leaf pieces, up to count
+  private static int matchingLength(Piece piece, Piece otherPiece, int count, boolean forward) {
+    boolean isAligned = forward ? piece.from == otherPiece.from : piece.to == otherPiece.to;
+    if (piece.node.getLeafValue() == otherPiece.node.getLeafValue() && isAligned) {
+      return count;
+    }
+    CharSequence leaf = piece.node.getLeafChars();
+    CharSequence otherLeaf = otherPiece.node.getLeafChars();
+    for (int i = 0; i < count; i++) {
+      char c = forward ? leaf.charAt(piece.from + i) : leaf.charAt(piece.to - 1 - i);
+      char other = forward
+          ? otherLeaf.charAt(otherPiece.from + i)
+          : otherLeaf.charAt(otherPiece.to - 1 - i);
+      if (c != other) {
+        return i;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Finds a node of the target lying entirely within the given target range whose very
+   * reference also lies within the given base range, and returns its offset in the base,
+   * its offset in the target and its length. Nodes are searched for from the tallest down
+   * to the leaves, and among nodes of the same height, the one nearest to the middle of the
+   * base range is picked so that the ranges left on either side are balanced.
+   */
+  private int[] findAnchor(int baseStart, int baseEnd, int targetStart, int targetEnd) {
+    int height = Math.min(this.base.getHeight(), this.target.getHeight());
+    for (; height >= 0; height--) {
+      Map<Node, Integer> targetNodes = new IdentityHashMap<>();
+      collect(this.target, 0, targetStart, targetEnd, height, targetNodes);
+      if (targetNodes.isEmpty()) {
+        continue;
+      }
+      Map<Node, Integer> baseNodes = new IdentityHashMap<>();
+      collect(this.base, 0, baseStart, baseEnd, height, baseNodes);
+      int middle = (baseStart + baseEnd) >>> 1;
+      int[] anchor = null;
+      for (Map.Entry<Node, Integer> entry : baseNodes.entrySet()) {
+        Integer targetOffset = targetNodes.get(entry.getKey());
+        int offset = entry.getValue();
+        if (targetOffset != null
+            && (anchor == null || Math.abs(offset - middle) < Math.abs(anchor[0] - middle))) {
+          anchor = new int[] {offset, targetOffset, entry.getKey().getLength()};
+        }
+      }
+      if (anchor != null) {
+        return anchor;
+      }
+    }
+    return null;
+  }
+
+  // collects the nodes of the given height lying entirely within [start, end) by offset
+  private static void collect(
+      Node node, int nodeStart, int start, int end, int height, Map<Node, Integer> nodes) {
+    int nodeEnd = nodeStart + node.getLength();
+    if (nodeEnd <= start || nodeStart >= end || node.getLength() == 0) {
+      return;
+    }
+    if (node.getHeight() == height) {
+      if (start <= nodeStart && nodeEnd <= end && !nodes.containsKey(node)) {
+        nodes.put(node, nodeStart);
+      }
+      return;
+    }
+    int childStart = nodeStart;
+    for (int i = 0; i < node.getChildCount(); i++) {
+      Node child = node.getChild(i);
+      collect(child, childStart, start, end, height, nodes);
+      childStart += child.getLength();
+    }
+  }
+
+  /**
+   * Reports the differences between two short ranges char by char, with the O(ND) diff of
+   * Myers, or as a single replacement if the ranges are long or differ too much.
+   */
+  private void charDiff(int baseStart, int baseEnd, int targetStart, int targetEnd) {
+    if (baseEnd - baseStart > MAX_CHAR_DIFF || targetEnd - targetStart > MAX_CHAR_DIFF) {
+      this.replace(baseStart, baseEnd, targetStart, targetEnd);
+      return;
+    }
+    String text = text(this.base, baseStart, baseEnd).toString();
+    String targetText = text(this.target, targetStart, targetEnd).toString();
+    List<int[]> edits = myers(text, targetText);
+    if (edits == null) {
+      this.replace(baseStart, baseEnd, targetStart, targetEnd);
+      return;
+    }
+    for (int[] edit : edits) {
+      this.replace(
+          baseStart + edit[0], baseStart + edit[1], targetStart + edit[2], targetStart + edit[3]);
+    }
+  }
+
+  /**
+   * Returns the edits turning {@code text} into {@code target}, each as the replaced range
+   * of {@code text} followed by the replacing range of {@code target}, or null if there
+   * are more than MAX_CHAR_EDITS chars to insert or delete.
+   */
+  private static List<int[]> myers(String text, String target) {
+    int n = text.length();
+    int m = target.length();
+    int max = Math.min(n + m, MAX_CHAR_EDITS);
+    int offset = max + 1;
+    // v[offset + k] is the furthest position in text reached on diagonal k
+    int[] v = new int[2 * max + 3];
+    List<int[]> trace = new ArrayList<>();
+    for (int d = 0; d <= max; d++) {
+      trace.add(v.clone());
+      for (int k = -d; k <= d; k += 2) {
+        int x = k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])
+            ? v[offset + k + 1]
+            : v[offset + k - 1] + 1;
+        int y = x - k;
+        while (x < n && y < m && text.charAt(x) == target.charAt(y)) {
+          x++;
+          y++;
+        }
+        v[offset + k] = x;
+        if (x >= n && y >= m) {
+          return backtrack(trace, offset, n, m);
+        }
+      }
+    }
+    return null;
+  }
+
+  private static List<int[]> backtrack(List<int[]> trace, int offset, int n, int m) {
+    Deque<int[]> edits = new ArrayDeque<>();
+    int x = n;
+    int y = m;
+    for (int d = trace.size() - 1; d > 0; d--) {
+      int[] v = trace.get(d);
+      int k = x - y;
+      boolean isInsertion = k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1]);
+      int previousX = isInsertion ? v[offset + k + 1] : v[offset + k - 1];
+      int previousY = previousX - (isInsertion ? k + 1 : k - 1);
+      // an insertion of target[previousY], or a deletion of text[previousX]
+      int endX = isInsertion ? previousX : previousX + 1;
+      int endY = isInsertion ? previousY + 1 : previousY;
+      int[] next = edits.peekFirst();
+      if (next != null && next[0] == endX && next[2] == endY) {
+        next[0] = previousX;
+        next[2] = previousY;
+      } else {
+        edits.addFirst(new int[] {previousX, endX, previousY, endY});
+      }
+      x = previousX;
+      y = previousY;
+    }
+    return new ArrayList<>(edits);
+  }
+
+  private void replace(int baseStart, int baseEnd, int targetStart, int targetEnd) {
+    this.builder.replace(
+        Interval.ofClosedOpen(baseStart, baseEnd), text(this.target, targetStart, targetEnd));
+  }
+
+  private static Rope text(Node node, int start, int end) {
+    if (start == end) {
+      return Rope.from("");
+    }
+    Rope.Builder builder = new Rope.Builder();
+    node.subsequence(builder, start, end);
+    return builder.build();
+  }
+
+  // A range of a node, not yet walked through.
+  private static final class Piece {
+    final Node node;
+    int from;
+    int to;
+
+    Piece(Node node, int from, int to) {
+      this.node = node;
+      this.from = from;
+      this.to = to;
+    }
+
+    int length() {
+      return this.to - this.from;
+    }
+  }
+
+  /**
+   * A walk through a range of a tree, from its start or from its end, as a stack of the
+   * pieces of nodes still to be walked through, the next one first.
+   */
+  private static final class Walk {
+    private final Deque<Piece> pieces = new ArrayDeque<>();
+    private final boolean forward;
+
+    Walk(Node root, int start, int end, boolean forward) {
+      this.forward = forward;
+      if (start < end) {
+        this.pieces.push(new Piece(root, start, end));
+      }
+    }
+
+    boolean isDone() {
+      return this.pieces.isEmpty();
+    }
+
+    Piece peek() {
+      return this.pieces.peek();
+    }
+
+    // replaces the next piece by the pieces of its children
+    void expand() {
+      Piece piece = this.pieces.pop();
+      Node node = piece.node;
+      int childCount = node.getChildCount();
+      int[] starts = new int[childCount];
+      int childStart = 0;
+      for (int i = 0; i < childCount; i++) {
+        starts[i] = childStart;
+        childStart += node.getChild(i).getLength();
+      }
+      for (int j = 0; j < childCount; j++) {
+        int i = this.forward ? childCount - 1 - j : j;
+        Node child = node.getChild(i);
+        int from = Math.max(piece.from, starts[i]);
+        int to = Math.min(piece.to, starts[i] + child.getLength());
+        if (from < to) {
+          this.pieces.push(new Piece(child, from - starts[i], to - starts[i]));
+        }
+      }
+    }
+
+    // walks through count chars of the next piece
+    void advance(int count) {
+      Piece piece = this.pieces.peek();
+      if (this.forward) {
+        piece.from += count;
+      } else {
+        piece.to -= count;
+      }
+      if (piece.length() == 0) {
+        this.pieces.pop();
+      }
+    }
+  }
+}
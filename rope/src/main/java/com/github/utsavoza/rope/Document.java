@@ -0,0 +1,82 @@
+package com.github.utsavoza.rope;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * A document shared between threads, holding its current contents as a {@link Rope}.
+ * Readers take a {@link #snapshot()}, a single volatile read, and are then free to read it
+ * for as long as they like, as ropes are immutable: they never block nor are blocked by
+ * writers. Writers compute the next version of the document from the current one and
+ * publish it with a compare-and-set, computing it again from the version another writer
+ * published meanwhile if the compare-and-set fails. Edits are O(log n) and share most of
+ * the tree, so that the window for a conflict is short.
+ *
+ * <p><strong>Examples:</strong>
+ * <pre>
+ *   Document document = new Document(Rope.from("hello world"));
+ *   Rope snapshot = document.snapshot();
+ *   document.replace(0, 5, "goodbye");
+ *   assertEquals(snapshot.toString(), "hello world");
+ *   assertEquals(document.snapshot().toString(), "goodbye world");
+ * </pre>
+ */
+public final class Document {
+
+  private final AtomicReference<Rope> current;
+
+  public Document(Rope initial) {
+    if (initial == null) {
+      throw new IllegalArgumentException("Attempting to create a document from null");
+    }
+    this.current = new AtomicReference<>(initial);
+  }
+
+  /** Returns the current contents of the document, which later edits leave untouched. */
+  public Rope snapshot() {
+    return this.current.get();
+  }
+
+  /**
+   * Sets the contents of the document to {@code next} if they are still {@code expected},
+   * e.g. the snapshot {@code next} was computed from. Returns false if another edit was
+   * published meanwhile.
+   */
+  public boolean compareAndSet(Rope expected, Rope next) {
+    if (next == null) {
+      throw new IllegalArgumentException("Attempting to set the document to null");
+    }
+    return this.current.compareAndSet(expected, next);
+  }
+
+  /**
+   * Applies {@code edit} to the current contents of the document and publishes the result,
+   * which is returned. The edit is applied again to the latest contents as long as other
+   * edits are published in between, so it must be free of side effects.
+   */
+  public Rope update(UnaryOperator<Rope> edit) {
+    while (true) {
+      Rope rope = this.current.get();
+      Rope next = edit.apply(rope);
+      if (this.compareAndSet(rope, next)) {
+        return next;
+      }
+    }
+  }
+
+  /**
+   * Replace the interval [start, end) of the current contents with {@code newString}, and
+   * returns the new contents.
+   */
+  public Rope replace(int start, int end, String newString) {
+    return this.update(rope -> rope.replace(start, end, newString));
+  }
+
+  public Rope insert(int offset, String s) {
+    return this.replace(offset, offset, s);
+  }
+
+  public Rope delete(int start, int end) {
+    return this.replace(start, end, "");
+  }
+}
@@ -0,0 +1,225 @@
+package com.github.utsavoza.rope;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The text held by a leaf {@link Node}, a flat string. Subclasses store the text in other
+ * forms, and build its String on demand. Reading chars through {@link #sequence()} rather
+ * than {@link #get()} avoids building a String for such leaves.
+ *
+ * @see Latin1
+ * @see Tail
+ */
+class Leaf implements CharSequence {
+
+  // estimated sizes of the objects making up a leaf, see RopeStats
+  static final int LEAF_BYTES = 16;
+  static final int STRING_BYTES = 24;
+  static final int ARRAY_HEADER_BYTES = 16;
+
+  private final String val;
+
+  Leaf(String val) {
+    this.val = val;
+  }
+
+  /**
+   * Returns a leaf holding {@code val}, as a {@link Latin1} leaf if compact leaves are
+   * enabled and every char of {@code val} fits in a byte.
+   */
+  static Leaf of(String val) {
+    return Latin1.ENABLED && Latin1.isLatin1(val) ? new Latin1(val) : new Leaf(val);
+  }
+
+  /** Returns the String of this leaf. */
+  String get() {
+    return this.val;
+  }
+
+  /**
+   * Returns the chars of this leaf, as its String, or as the leaf itself if its chars can
+   * be read without building one.
+   */
+  CharSequence sequence() {
+    return this.get();
+  }
+
+  @Override public int length() {
+    return this.get().length();
+  }
+
+  /** Returns the char at {@code index} of the String of this leaf. */
+  @Override public char charAt(int index) {
+    return this.get().charAt(index);
+  }
+
+  @Override public CharSequence subSequence(int start, int end) {
+    return this.get().substring(start, end);
+  }
+
+  /** Whether the String of this leaf starts with '\n'. */
+  boolean startsWithLineFeed() {
+    String val = this.get();
+    return !val.isEmpty() && val.charAt(0) == '\n';
+  }
+
+  /** Whether the String of this leaf ends with '\r'. */
+  boolean endsWithCarriageReturn() {
+    String val = this.get();
+    return !val.isEmpty() && val.charAt(val.length() - 1) == '\r';
+  }
+
+  /**
+   * Returns an estimate of the bytes of memory retained by this leaf, see
+   * {@link RopeStats#retainedBytes()}. Strings hold a byte per char if they are Latin-1
+   * on runtimes with compact strings, and two otherwise.
+   */
+  long retainedBytes() {
+    int bytesPerChar = !Latin1.COMPACT_STRINGS || !Latin1.isLatin1(this.val) ? 2 : 1;
+    return LEAF_BYTES + STRING_BYTES
+        + RopeStats.align(ARRAY_HEADER_BYTES + (long) bytesPerChar * this.val.length());
+  }
+
+  @Override public String toString() {
+    return this.get();
+  }
+
+  @Override public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof Leaf)) {
+      return false;
+    }
+    Leaf otherLeaf = (Leaf) obj;
+    return this.get().equals(otherLeaf.get());
+  }
+
+  @Override public int hashCode() {
+    return this.get().hashCode();
+  }
+
+  /**
+   * A leaf of Latin-1 text, stored as one byte per char. Its String is rebuilt on every
+   * {@link #get()}, whereas chars are read from the bytes directly through
+   * {@link #sequence()}. Compact leaves halve the memory held by the leaves on runtimes
+   * whose Strings are made of UTF-16 chars, i.e. up to Java 8, and are only enabled on such
+   * runtimes by default, since later runtimes already store Latin-1 Strings as bytes. The
+   * {@code com.github.utsavoza.rope.compactLeaves} system property overrides the default.
+   */
+  static final class Latin1 extends Leaf {
+
+    // whether the runtime stores Latin-1 Strings as bytes, as runtimes after Java 8 do
+    static final boolean COMPACT_STRINGS =
+        !System.getProperty("java.specification.version", "").startsWith("1.");
+
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty(
+        "com.github.utsavoza.rope.compactLeaves", String.valueOf(!COMPACT_STRINGS)));
+
+    private final byte[] bytes;
+
+    Latin1(String val) {
+      super(null);
+      this.bytes = val.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    static boolean isLatin1(String s) {
+      for (int i = 0; i < s.length(); i++) {
+        if (s.charAt(i) > 0xFF) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override String get() {
+      return new String(this.bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override CharSequence sequence() {
+      return this;
+    }
+
+    @Override public int length() {
+      return this.bytes.length;
+    }
+
+    @Override public char charAt(int index) {
+      return (char) (this.bytes[index] & 0xFF);
+    }
+
+    @Override public CharSequence subSequence(int start, int end) {
+      return new String(this.bytes, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override long retainedBytes() {
+      return LEAF_BYTES + RopeStats.align(ARRAY_HEADER_BYTES + this.bytes.length);
+    }
+
+    @Override boolean startsWithLineFeed() {
+      return this.bytes.length > 0 && this.bytes[0] == '\n';
+    }
+
+    @Override boolean endsWithCarriageReturn() {
+      return this.bytes.length > 0 && this.bytes[this.bytes.length - 1] == '\r';
+    }
+  }
+
+  /**
+   * A leaf over the first {@code length} chars of an array shared with the
+   * {@link Rope.Appender} that wrote them. The appender only ever writes past the chars of
+   * the leaves it has handed out, so that they are never mutated once the leaf is built.
+   * Its String is rebuilt on every {@link #get()}, whereas chars are read from the array
+   * directly, as for {@link Latin1}.
+   */
+  static final class Tail extends Leaf {
+
+    private final char[] chars;
+    private final int length;
+
+    Tail(char[] chars, int length) {
+      super(null);
+      this.chars = chars;
+      this.length = length;
+    }
+
+    @Override String get() {
+      return new String(this.chars, 0, this.length);
+    }
+
+    @Override CharSequence sequence() {
+      return this;
+    }
+
+    @Override public int length() {
+      return this.length;
+    }
+
+    @Override public char charAt(int index) {
+      if (index >= this.length) {
+        throw new StringIndexOutOfBoundsException(index);
+      }
+      return this.chars[index];
+    }
+
+    @Override public CharSequence subSequence(int start, int end) {
+      if (end > this.length) {
+        throw new StringIndexOutOfBoundsException(end);
+      }
+      return new String(this.chars, start, end - start);
+    }
+
+    // the whole array is retained, even the part past this leaf
+    @Override long retainedBytes() {
+      return LEAF_BYTES + RopeStats.align(ARRAY_HEADER_BYTES + 2L * this.chars.length);
+    }
+
+    @Override boolean startsWithLineFeed() {
+      return this.length > 0 && this.chars[0] == '\n';
+    }
+
+    @Override boolean endsWithCarriageReturn() {
+      return this.length > 0 && this.chars[this.length - 1] == '\r';
+    }
+  }
+}
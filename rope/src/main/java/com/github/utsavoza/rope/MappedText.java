@@ -0,0 +1,191 @@
+package com.github.utsavoza.rope;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.utsavoza.rope.Node.MAX_LEAF;
+
+/**
+ * A file mapped into memory, whose leaves are decoded into Strings only when they are
+ * first read. The file is decoded once when it is opened, to find the byte range, the
+ * length and the newline count of every leaf, without holding on to the decoded chars.
+ * The Strings of the most recently read leaves are then kept in a bounded cache.
+ *
+ * <p>The charset must be stateless, i.e. any leaf must decode on its own, which is the
+ * case for UTF-8, UTF-16BE/LE, US-ASCII and the ISO-8859 family. Malformed input is
+ * replaced with the charset's replacement string.
+ */
+final class MappedText {
+
+  // the number of decoded leaves kept in memory per file
+  static final int MAX_CACHED_LEAVES = 4096;
+
+  // the largest region of the file mapped at once
+  private static final long MAX_REGION = 1L << 30;
+
+  // more bytes than any charset needs for a leaf, replacement of malformed input included
+  private static final int MAX_LEAF_BYTES = 8 * MAX_LEAF;
+
+  private final Charset charset;
+  private final List<MappedByteBuffer> regions = new ArrayList<>();
+  // decoded leaves by index, in access order
+  private final Map<Integer, String> cache =
+      new LinkedHashMap<Integer, String>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+          return this.size() > MAX_CACHED_LEAVES;
+        }
+      };
+
+  private MappedText(Charset charset) {
+    this.charset = charset;
+  }
+
+  /** Maps the file at {@code path} and returns a tree over its lazily decoded leaves. */
+  static Node load(Path path, Charset charset) throws IOException {
+    MappedText text = new MappedText(charset);
+    List<Node> leaves = new ArrayList<>();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      text.loadLeaves(path, channel, leaves);
+    }
+    if (leaves.isEmpty()) {
+      return Node.fromStringPiece("");
+    }
+    return Node.fromLevel(leaves);
+  }
+
+  private void loadLeaves(Path path, FileChannel channel, List<Node> leaves)
+      throws IOException {
+    CharsetDecoder decoder = this.newDecoder();
+    CharBuffer out = CharBuffer.allocate(MAX_LEAF);
+    long size = channel.size();
+    long position = 0;
+    long length = 0;
+    while (position < size) {
+      long regionSize = Math.min(size - position, MAX_REGION);
+      MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, regionSize);
+      boolean isLastRegion = position + regionSize == size;
+      this.regions.add(region);
+      // a leaf never spans two regions, so that it can be decoded from a single buffer
+      while (isLastRegion ? region.hasRemaining() : region.remaining() >= MAX_LEAF_BYTES) {
+        int byteStart = region.position();
+        out.clear();
+        decoder.decode(region, out, isLastRegion);
+        if (isLastRegion && !region.hasRemaining()) {
+          decoder.flush(out);
+        }
+        out.flip();
+        if (out.length() == 0) {
+          break;
+        }
+        length += out.length();
+        if (length > Integer.MAX_VALUE) {
+          throw new IllegalArgumentException(path + " exceeds the maximum rope length");
+        }
+        MappedLeaf leaf = new MappedLeaf(
+            this, leaves.size(), this.regions.size() - 1, byteStart, region.position(), out);
+        leaves.add(Node.fromLeaf(leaf, out.length(), Util.countNewlines(out, 0, out.length())));
+      }
+      position += region.position();
+    }
+  }
+
+  private CharsetDecoder newDecoder() {
+    return this.charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  }
+
+  private String decode(MappedLeaf leaf) {
+    synchronized (this.cache) {
+      String cached = this.cache.get(leaf.index);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    ByteBuffer bytes = this.regions.get(leaf.region).duplicate();
+    bytes.limit(leaf.byteEnd).position(leaf.byteStart);
+    String decoded;
+    try {
+      decoded = this.newDecoder().decode(bytes).toString();
+    } catch (IOException e) {
+      throw new IllegalStateException("unreachable state", e);
+    }
+    synchronized (this.cache) {
+      this.cache.put(leaf.index, decoded);
+    }
+    return decoded;
+  }
+
+  /** A leaf holding a byte range of a {@link MappedText}, decoded when first read. */
+  static final class MappedLeaf extends Leaf {
+
+    // the estimated size of a mapped leaf, see RopeStats
+    private static final int MAPPED_LEAF_BYTES = 40;
+
+    private final MappedText text;
+    private final int index;
+    private final int region;
+    private final int byteStart;
+    private final int byteEnd;
+    private final boolean startsWithLineFeed;
+    private final boolean endsWithCarriageReturn;
+
+    private MappedLeaf(
+        MappedText text, int index, int region, int byteStart, int byteEnd, CharBuffer chars) {
+      super(null);
+      this.text = text;
+      this.index = index;
+      this.region = region;
+      this.byteStart = byteStart;
+      this.byteEnd = byteEnd;
+      this.startsWithLineFeed = chars.charAt(0) == '\n';
+      this.endsWithCarriageReturn = chars.charAt(chars.length() - 1) == '\r';
+    }
+
+    @Override String get() {
+      return this.text.decode(this);
+    }
+
+    // the decoded String is held by the cache of the file, not by the leaf
+    @Override long retainedBytes() {
+      return MAPPED_LEAF_BYTES;
+    }
+
+    @Override boolean startsWithLineFeed() {
+      return this.startsWithLineFeed;
+    }
+
+    @Override boolean endsWithCarriageReturn() {
+      return this.endsWithCarriageReturn;
+    }
+
+    @Override public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj instanceof MappedLeaf) {
+        MappedLeaf otherLeaf = (MappedLeaf) obj;
+        if (this.text == otherLeaf.text && this.index == otherLeaf.index) {
+          return true;
+        }
+      }
+      return super.equals(obj);
+    }
+
+    @Override public int hashCode() {
+      return super.hashCode();
+    }
+  }
+}
@@ -1,17 +1,31 @@
 package com.github.utsavoza.rope;
 
-import com.github.utsavoza.rope.NodeBody.NodeVal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static com.github.utsavoza.rope.Util.NEW_LINE;
 import static com.github.utsavoza.rope.Util.compare;
 import static com.github.utsavoza.rope.Util.findLeafSplitForMerge;
 
-/** Represents a node in the tree. */
+/**
+ * Represents a node in the tree. The internal nodes in the tree represent the
+ * concatenation of their children whereas the leaves consist of flat strings. The
+ * metrics of a node are held inline, along with either its children or its {@link Leaf},
+ * so that walking down a level of the tree is a single array load. An internal node also
+ * keeps the prefix sums of the lengths and line breaks of its children, so that the child
+ * holding an offset or a line is found by a binary search, without allocating.
+ *
+ * <p>The fields of a node are not final, as a node may be mutated until it is published,
+ * that is until it becomes reachable from a {@link Rope}. The only such nodes are those
+ * owned by the edit token of a {@link Rope.Transient}, which are mutated until
+ * {@link Rope.Transient#persistent()} ends the editor, every other edit building new
+ * nodes. A published node is never mutated again, but for its lazily computed content
+ * hash, which every thread computes alike. Ropes hold their root in a final field, so that
+ * a rope seen by any thread sees the nodes as they were when it was built.
+ */
 final class Node {
 
   // represents string byte length, will currently
@@ -22,10 +36,69 @@ final class Node {
   static final int MIN_CHILDREN = 4;
   static final int MAX_CHILDREN = 8;
 
-  private NodeBody nodeBody;
+  // the length from which a leaf is reused as it is by compact()
+  private static final int COMPACT_LEAF = MAX_LEAF - MAX_LEAF / 4;
+
+  // a tree is compacted once more than one of this many of its leaves is underfull
+  static final int FRAGMENTED_LEAVES = 8;
+
+  private int height;
+  private int length;
+  private int newlineCount;
+  // the number of leaves in the tree of this node, and of those shorter than MIN_LEAF
+  private int leafCount;
+  private int underfullLeafCount;
+  // the children of an internal node, null for a leaf
+  private Node[] children;
+  // the number of chars and of line breaks in the text before each child, with one more
+  // entry for the whole text, null for a leaf
+  private int[] offsets;
+  private int[] newlineOffsets;
+  // the text of a leaf, null for an internal node
+  private Leaf leaf;
+  // content hash, computed on first use and published by the write to hashed
+  private long contentHash;
+  private volatile boolean hashed;
+  // the edit token of the Rope.Transient allowed to mutate this node, if any
+  private final Object owner;
+
+  private Node(Leaf leaf, int length, int newlineCount) {
+    this.length = length;
+    this.newlineCount = newlineCount;
+    this.leafCount = 1;
+    this.underfullLeafCount = length < MIN_LEAF ? 1 : 0;
+    this.leaf = leaf;
+    this.owner = null;
+    RopeStats.count(RopeStats.NODES_ALLOCATED);
+  }
+
+  private Node(Node[] children) {
+    this.height = children[0].getHeight() + 1;
+    this.children = children;
+    this.offsets = new int[children.length + 1];
+    this.newlineOffsets = new int[children.length + 1];
+    this.owner = null;
+    for (Node child : children) {
+      this.leafCount += child.leafCount;
+      this.underfullLeafCount += child.underfullLeafCount;
+    }
+    this.updatePrefixes(0);
+    RopeStats.count(RopeStats.NODES_ALLOCATED);
+  }
 
-  Node(NodeBody nodeBody) {
-    this.nodeBody = nodeBody;
+  // a copy of node sharing its children and prefix sums, owned by owner
+  private Node(Node node, Object owner) {
+    this.height = node.height;
+    this.length = node.length;
+    this.newlineCount = node.newlineCount;
+    this.leafCount = node.leafCount;
+    this.underfullLeafCount = node.underfullLeafCount;
+    this.children = node.children;
+    this.offsets = node.offsets;
+    this.newlineOffsets = node.newlineOffsets;
+    this.leaf = node.leaf;
+    this.owner = owner;
+    RopeStats.count(RopeStats.NODES_ALLOCATED);
   }
 
   static Node fromString(String s) {
@@ -34,39 +107,50 @@ final class Node {
     return builder.getRootNode();
   }
 
-  /** Returns a {@link NodeBody.Leaf} node which holds a flat string {@code piece} */
+  /** Returns a leaf node which holds a flat string {@code piece} */
   static Node fromStringPiece(String piece) {
     if (piece.length() > MAX_LEAF) {
       throw new IllegalArgumentException("String piece exceeds MAX_LEAF limit");
     }
+    return Node.fromLeaf(Leaf.of(piece), piece.length(), Util.countNewlines(piece));
+  }
 
-    NodeBody nodeBody = new NodeBody.Builder()
-        .height(0)
-        .length(piece.length())
-        .newlineCount(Util.countOccurrence(piece, NEW_LINE))
-        .val(new NodeBody.Leaf(piece))
-        .build();
-
-    return new Node(nodeBody);
+  /** Returns a leaf node which holds {@code leaf}, of the given length and newline count. */
+  static Node fromLeaf(Leaf leaf, int length, int newlineCount) {
+    return new Node(leaf, length, newlineCount);
   }
 
-  /** Returns an {@link NodeBody.Internal} node whose children are node {@code pieces}. */
+  /** Returns an internal node whose children are node {@code pieces}. */
   static Node fromPieces(List<Node> pieces) {
     if (pieces.size() < 2 || pieces.size() > MAX_CHILDREN) {
       throw new IllegalArgumentException("Nodes exceeds MAX_CHILDREN limit");
     }
+    return new Node(pieces.toArray(new Node[0]));
+  }
 
-    int height = pieces.get(0).getHeight() + 1;
-    int length = pieces.stream().mapToInt(Node::getLength).sum();
-    int newlineCount = pieces.stream().mapToInt(Node::getNewlineCount).sum();
-    NodeBody nodeBody = new NodeBody.Builder()
-        .height(height)
-        .length(length)
-        .newlineCount(newlineCount)
-        .val(new NodeBody.Internal(pieces))
-        .build();
-
-    return new Node(nodeBody);
+  /**
+   * Returns a balanced tree over {@code nodes}, which must all be of the same height.
+   * The tree is built bottom-up one level at a time, every level being split into
+   * evenly filled groups of at most {@link #MAX_CHILDREN} nodes.
+   */
+  static Node fromLevel(List<Node> nodes) {
+    if (nodes.isEmpty()) {
+      throw new IllegalArgumentException("fromLevel() called with no nodes");
+    }
+    List<Node> level = nodes;
+    while (level.size() > 1) {
+      int groups = (level.size() + MAX_CHILDREN - 1) / MAX_CHILDREN;
+      List<Node> parents = new ArrayList<>(groups);
+      int from = 0;
+      for (int i = 0; i < groups; i++) {
+        // spread the remainder so that no group falls below MIN_CHILDREN
+        int to = (int) ((long) level.size() * (i + 1) / groups);
+        parents.add(Node.fromPieces(new ArrayList<>(level.subList(from, to))));
+        from = to;
+      }
+      level = parents;
+    }
+    return level.get(0);
   }
 
   static Node mergeNodes(List<Node> children1, List<Node> children2) {
@@ -74,8 +158,10 @@ final class Node {
     List<Node> children =
         Stream.concat(children1.stream(), children2.stream()).collect(Collectors.toList());
     if (totalChildren <= MAX_CHILDREN) {
+      RopeStats.count(RopeStats.NODE_MERGES);
       return Node.fromPieces(children);
     } else {
+      RopeStats.count(RopeStats.NODE_SPLITS);
       // Splitting at midpoint is also an option
       int splitPoint = Math.min(MAX_CHILDREN, totalChildren - MIN_CHILDREN);
       List<Node> left = children.subList(0, splitPoint);
@@ -92,12 +178,12 @@ final class Node {
     if (rope1.getLength() >= MIN_LEAF && rope2.getLength() >= MIN_LEAF) {
       return Node.fromPieces(Arrays.asList(rope1, rope2));
     }
-    String rope1String = rope1.getLeaf();
-    String rope2String = rope2.getLeaf();
-    String ropeString = rope1String + rope2String;
+    String ropeString = concatLeaves(rope1, rope2);
+    RopeStats.count(RopeStats.LEAF_MERGES);
     if (ropeString.length() <= MAX_LEAF) {
       return Node.fromStringPiece(ropeString);
     } else {
+      RopeStats.count(RopeStats.LEAF_SPLITS);
       int splitPoint = findLeafSplitForMerge(ropeString);
       String leftString = ropeString.substring(0, splitPoint);
       String rightString = ropeString.substring(splitPoint);
@@ -139,12 +225,12 @@ final class Node {
 
       case GREATER: {
         List<Node> rope1Children = rope1.getChildren();
-        if (rope2Height == rope1Height - 1) {
+        if (rope2Height == rope1Height - 1 && rope2.isValidNode()) {
           return Node.mergeNodes(rope1Children, Collections.singletonList(rope2));
         }
         int lastChildIndex = rope1Children.size() - 1;
         Node newRope = Node.concat(rope1Children.get(lastChildIndex), rope2);
-        List<Node> rope1ChildrenSubList = rope1Children.subList(1, lastChildIndex + 1);
+        List<Node> rope1ChildrenSubList = rope1Children.subList(0, lastChildIndex);
         if (newRope.getHeight() == rope1Height - 1) {
           return mergeNodes(rope1ChildrenSubList, Collections.singletonList(newRope));
         } else {
@@ -158,24 +244,68 @@ final class Node {
   }
 
   /**
-   * Index represents the index of the child node in {@code children} in which the
-   * interval [start, end) exists, and the Offset represents the offset of Unicode char
-   * count before the interval [start, end).
+   * Returns the index of the child of this internal node holding the char at
+   * {@code offset}, i.e. the first child ending past it, or the last child if
+   * {@code offset} is the length of this node.
    */
-  static ChildIndexOffset getChildIndexOffset(List<Node> children, int start, int end) {
-    int offset = 0;
-    for (int i = 0; i < children.size(); i++) {
-      int nextOffset = offset + children.get(i).getLength();
-      if (nextOffset >= start) {
-        if (nextOffset >= end) {
-          return new ChildIndexOffset(i, offset);
-        } else {
-          return null;
-        }
+  int childAt(int offset) {
+    int[] offsets = this.offsets;
+    int low = 0;
+    int high = this.children.length - 1;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (offset < offsets[middle + 1]) {
+        high = middle;
+      } else {
+        low = middle + 1;
       }
-      offset = nextOffset;
     }
-    return null;
+    return low;
+  }
+
+  /**
+   * Returns the index of the first child of this internal node whose end is at or past
+   * {@code start}, provided the whole interval [start, end) lies within it, or -1.
+   */
+  private int childSpanning(int start, int end) {
+    int index = start == 0 ? 0 : this.childAt(start - 1);
+    return end <= this.offsets[index + 1] ? index : -1;
+  }
+
+  /** Returns the number of chars in the text of this internal node before its child. */
+  int getChildOffset(int index) {
+    return this.offsets[index];
+  }
+
+  // whether a "\r\n" is split between the children at index - 1 and index
+  private boolean isJoinedAt(int index) {
+    return this.children[index - 1].endsWithCarriageReturn()
+        && this.children[index].startsWithLineFeed();
+  }
+
+  // recomputes the prefix sums and the metrics of this internal node from the child at from
+  private void updatePrefixes(int from) {
+    Node[] children = this.children;
+    for (int i = from; i < children.length; i++) {
+      Node child = children[i];
+      this.offsets[i + 1] = this.offsets[i] + child.getLength();
+      this.newlineOffsets[i + 1] = this.newlineOffsets[i] + child.getNewlineCount()
+          - (i > 0 && this.isJoinedAt(i) ? 1 : 0);
+    }
+    this.length = this.offsets[children.length];
+    this.newlineCount = this.newlineOffsets[children.length];
+    this.hashed = false;
+  }
+
+  // shifts the prefix sums past the child at index, whose edges are unchanged
+  private void shiftPrefixes(int index, int lengthDelta, int newlineDelta) {
+    for (int i = index + 1; i <= this.children.length; i++) {
+      this.offsets[i] += lengthDelta;
+      this.newlineOffsets[i] += newlineDelta;
+    }
+    this.length += lengthDelta;
+    this.newlineCount += newlineDelta;
+    this.hashed = false;
   }
 
   // should this be used instead of its static alternative ?
@@ -186,12 +316,12 @@ final class Node {
     if (this.getLength() >= MIN_LEAF && rope.getLength() >= MIN_LEAF) {
       return Node.fromPieces(Arrays.asList(this, rope));
     }
-    String thisString = this.getLeaf();
-    String ropeString = rope.getLeaf();
-    String mergedString = thisString + ropeString;
+    String mergedString = concatLeaves(this, rope);
+    RopeStats.count(RopeStats.LEAF_MERGES);
     if (mergedString.length() <= MAX_LEAF) {
       return Node.fromStringPiece(mergedString);
     } else {
+      RopeStats.count(RopeStats.LEAF_SPLITS);
       int splitPoint = findLeafSplitForMerge(mergedString);
       String leftString = mergedString.substring(0, splitPoint);
       String rightString = mergedString.substring(splitPoint);
@@ -201,54 +331,19 @@ final class Node {
     }
   }
 
+  // the String of two leaves, read through their chars rather than through their Strings
+  private static String concatLeaves(Node leaf, Node otherLeaf) {
+    CharSequence chars = leaf.getLeafChars();
+    CharSequence otherChars = otherLeaf.getLeafChars();
+    return new StringBuilder(chars.length() + otherChars.length())
+        .append(chars)
+        .append(otherChars)
+        .toString();
+  }
+
   // should this be used instead of its static alternative ??
   Node concat(Node anotherRope) {
-    int rope1Height = this.getHeight();
-    int rope2Height = anotherRope.getHeight();
-
-    switch (compare(rope1Height, rope2Height)) {
-      case LESS: {
-        List<Node> rope2Children = anotherRope.getChildren();
-        if (rope1Height == rope2Height - 1 && this.isValidNode()) {
-          return mergeNodes(Collections.singletonList(this), rope2Children);
-        }
-        Node newRope = concat(this, rope2Children.get(0));
-        List<Node> rope2ChildrenSubList = rope2Children.subList(1, rope2Children.size());
-        if (newRope.getHeight() == rope2Height - 1) {
-          return mergeNodes(Collections.singletonList(newRope), rope2ChildrenSubList);
-        } else {
-          return mergeNodes(newRope.getChildren(), rope2ChildrenSubList);
-        }
-      }
-
-      case EQUAL: {
-        if (this.isValidNode() && anotherRope.isValidNode()) {
-          return Node.fromPieces(Arrays.asList(this, anotherRope));
-        }
-        if (rope1Height == 0) {
-          return mergeLeaves(this, anotherRope);
-        }
-        return mergeNodes(this.getChildren(), anotherRope.getChildren());
-      }
-
-      case GREATER: {
-        List<Node> rope1Children = this.getChildren();
-        if (rope2Height == rope1Height - 1) {
-          return Node.mergeNodes(rope1Children, Collections.singletonList(anotherRope));
-        }
-        int lastChildIndex = rope1Children.size() - 1;
-        Node newRope = Node.concat(rope1Children.get(lastChildIndex), anotherRope);
-        List<Node> rope1ChildrenSubList = rope1Children.subList(1, lastChildIndex + 1);
-        if (newRope.getHeight() == rope1Height - 1) {
-          return mergeNodes(rope1ChildrenSubList, Collections.singletonList(newRope));
-        } else {
-          return mergeNodes(rope1ChildrenSubList, newRope.getChildren());
-        }
-      }
-
-      default:
-        throw new IllegalStateException("unreachable state");
-    }
+    return Node.concat(this, anotherRope);
   }
 
   /**
@@ -261,126 +356,362 @@ final class Node {
     // reflect publicly and should be highly discouraged. What we
     // need is an internal data structure to temporarily hold and
     // maintain the rope as and when it is built recursively.
+    if (start == end) {
+      return;
+    }
     if (start == 0 && this.getLength() == end) {
       builder.push(this);
       return;
     }
-    NodeVal val = this.nodeBody.val();
-    if (val instanceof NodeBody.Leaf) {
-      String leafString = getLeaf();
-      builder.pushShortString(leafString.substring(start, end));
-    } else if (val instanceof NodeBody.Internal) {
-      int offset = 0;
-      List<Node> children = getChildren();
-      for (Node child : children) {
-        if (end <= offset) {
-          break;
-        }
-        if (offset + child.getLength() > start) {
-          int childStart = Math.max(offset, start) - offset;
-          int childEnd = Math.min(child.getLength(), end - offset);
-          child.subsequence(builder, childStart, childEnd);
-        }
-        offset += child.getLength();
+    if (this.isLeaf()) {
+      builder.pushShortString(this.getLeafChars().subSequence(start, end).toString());
+      return;
+    }
+    int first = this.childAt(start);
+    int last = end == 0 ? 0 : this.childAt(end - 1);
+    for (int i = first; i <= last; i++) {
+      Node child = this.children[i];
+      int offset = this.offsets[i];
+      int childStart = Math.max(offset, start) - offset;
+      int childEnd = Math.min(child.getLength(), end - offset);
+      if (childStart < childEnd) {
+        child.subsequence(builder, childStart, childEnd);
       }
-    } else {
-      throw new IllegalStateException("unreachable state");
     }
   }
 
   /**
-   * Replace the interval [start, end) in this {@link Rope} with the given {@link Node}.
-   * The current implementation replaces the {@link NodeBody} of this {@link Node} with a
-   * new {@link NodeBody}. The immutability is maintained by calling this method on the
-   * copy of this {@link Node}.
+   * Returns a new tree holding the String of this {@link Node} with the interval
+   * [start, end) replaced with {@code s}. The subtrees of this node around the interval are
+   * shared with the new tree, and this node is left untouched.
    */
-  private void replace(int start, int end, Node node) {
-    NodeVal val = node.nodeBody.val();
-    String s = ((String) val.get());
-    if (s.length() < MIN_LEAF) {
-      replaceString(start, end, s, false);
-      return;
-    }
+  Node replaceString(int start, int end, String s) {
     Rope.Builder builder = new Rope.Builder();
     this.subsequence(builder, 0, start);
-    builder.push(node);
+    builder.pushString(s);
     this.subsequence(builder, end, this.getLength());
-    this.nodeBody = builder.getRootNode().nodeBody;
+    return builder.getRootNode();
+  }
+
+  /** Returns the char at {@code index} of the String that this {@link Node} effectively holds. */
+  char charAt(int index) {
+    Node node = this;
+    while (!node.isLeaf()) {
+      int i = node.childAt(index);
+      index -= node.offsets[i];
+      node = node.children[i];
+    }
+    return node.leaf.charAt(index);
   }
 
   /**
-   * Replace the interval [start, end) in this {@link Rope} with the given String {@code s}.
-   * The current implementation replaces the {@link NodeBody} of this {@link Node} with a new
-   * {@link NodeBody}. The immutability is maintained by calling this method on the copy of
-   * this {@link Node}. Currently, the operation avoids replacing in place by default.
+   * Returns the number of line breaks in the first {@code offset} chars of the String that
+   * this {@link Node} effectively holds, counted as {@link Util#countNewlines(String)} would.
    */
-  void replaceString(int start, int end, String s, boolean tryReplaceInplace) {
-    if (s.length() < MIN_LEAF && tryReplaceInplace && tryReplaceString(start, end, s)) {
-      return;
+  int countNewlinesBefore(int offset) {
+    Node node = this;
+    int count = 0;
+    while (!node.isLeaf()) {
+      if (offset == node.getLength()) {
+        return count + node.getNewlineCount();
+      }
+      int i = node.childAt(offset);
+      offset -= node.offsets[i];
+      count += node.newlineOffsets[i];
+      if (offset == 0) {
+        return count;
+      }
+      // a '\n' starting the child completes the '\r' already counted before it
+      if (i > 0 && node.isJoinedAt(i)) {
+        count--;
+      }
+      node = node.children[i];
     }
-    Rope.Builder builder = new Rope.Builder();
-    this.subsequence(builder, 0, start);
-    builder.pushString(s);
-    this.subsequence(builder, end, this.getLength());
-    this.nodeBody = builder.getRootNode().nodeBody;
+    return count + Util.countNewlines(node.getLeafChars(), 0, offset);
   }
 
   /**
-   * Try to replace the interval [start, end) in this Rope <b>in place</b> with the given
-   * String {@code s}. Instead of replacing the {@link NodeBody} of this {@link Node},
-   * the method tries to replace the interval [start, end) in this {@link Node}'s
-   * {@link NodeBody}. The immutability isn't preserved even if this method is called
-   * on this {@link Node}'s copy.
+   * Returns the offset just past the {@code line}-th line break of the String that this
+   * {@link Node} effectively holds, where {@code line} is in [1, newlineCount]. A "\r\n"
+   * split across two children is attributed to the child holding the '\n'.
    */
-  private boolean tryReplaceLeafString(int start, int end, String s) {
-    if (!this.isLeaf()) {
-      throw new IllegalArgumentException("tryReplaceLeafString() called with internal node");
+  int offsetOfLine(int line) {
+    Node node = this;
+    int offset = 0;
+    while (!node.isLeaf()) {
+      if (line > node.getNewlineCount()) {
+        throw new IllegalArgumentException("line exceeds the newline count of the node");
+      }
+      int[] newlineOffsets = node.newlineOffsets;
+      int low = 0;
+      int high = node.children.length - 1;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (line <= newlineOffsets[middle + 1]) {
+          high = middle;
+        } else {
+          low = middle + 1;
+        }
+      }
+      int i = low;
+      if (line == newlineOffsets[i + 1] && i + 1 < node.children.length
+          && node.isJoinedAt(i + 1)) {
+        // the line break is a "\r\n" split between the child and the next one
+        return offset + node.offsets[i + 1] + 1;
+      }
+      line -= newlineOffsets[i] - (i > 0 && node.isJoinedAt(i) ? 1 : 0);
+      offset += node.offsets[i];
+      node = node.children[i];
     }
-    int newLength = this.getLength() + s.length();
-    if (newLength < MIN_LEAF + (end - start) || newLength > MAX_LEAF + (end - start)) {
-      return false;
+    CharSequence leaf = node.getLeafChars();
+    for (int i = 0; i < leaf.length(); i++) {
+      char c = leaf.charAt(i);
+      boolean isLineBreak =
+          c == '\n' || (c == '\r' && (i + 1 == leaf.length() || leaf.charAt(i + 1) != '\n'));
+      if (isLineBreak && --line == 0) {
+        return offset + i + 1;
+      }
     }
-    String leafString = this.getLeaf();
-    String newString =
-        leafString.substring(0, start) + s + leafString.substring(end, leafString.length());
-    Node newNode = Node.fromStringPiece(newString);
-    this.nodeBody = newNode.nodeBody;
-    return true;
+    throw new IllegalArgumentException("line exceeds the newline count of the node");
   }
 
-  // try to replace the string without changing the tree structure
-  private boolean tryReplaceString(int start, int end, String newString) {
+  /**
+   * Returns the polynomial hash of the text of this node, see
+   * {@link Util#contentHash(long, CharSequence, int, int)}. The hash is computed once from
+   * the hashes of the children, and is independent of how the text is split in leaves.
+   */
+  long contentHash() {
+    if (!this.hashed) {
+      long hash = 0;
+      if (this.isLeaf()) {
+        CharSequence leaf = this.getLeafChars();
+        hash = Util.contentHash(0, leaf, 0, leaf.length());
+      } else {
+        for (Node child : this.children) {
+          hash = Util.concatHash(hash, child.contentHash(), child.getLength());
+        }
+      }
+      this.contentHash = hash;
+      this.hashed = true;
+    }
+    return this.contentHash;
+  }
+
+  /**
+   * Returns the content hash of the text of this node in [start, end), composed of the
+   * cached hashes of the children lying within the range and of the hashes of the parts
+   * of the leaves at its bounds.
+   */
+  long contentHash(int start, int end) {
+    if (start == 0 && end == this.getLength()) {
+      return this.contentHash();
+    }
     if (this.isLeaf()) {
-      return tryReplaceLeafString(start, end, newString);
-    }
-
-    // mutate in place
-    boolean success = false;
-    if (this.nodeBody.val() instanceof NodeBody.Internal) {
-      List<Node> children = getChildren();
-      ChildIndexOffset childIndexOffset = getChildIndexOffset(children, start, end);
-      if (childIndexOffset != null) {
-        int index = childIndexOffset.index;
-        int offset = childIndexOffset.offset;
-        int oldNewLineCount = children.get(index).getNewlineCount();
-        success = children.get(index).tryReplaceString(start - offset, end - offset, newString);
-        if (success) {
-          this.nodeBody = new NodeBody.Builder()
-              .length(this.getLength() - (end - start) + newString.length())
-              .newlineCount(
-                  this.getNewlineCount() - oldNewLineCount + children.get(index).getNewlineCount())
-              .height(this.getHeight())
-              .val(this.nodeBody.val())
-              .build();
+      return Util.contentHash(0, this.getLeafChars(), start, end);
+    }
+    long hash = 0;
+    int last = end == 0 ? 0 : this.childAt(end - 1);
+    for (int i = this.childAt(start); i <= last; i++) {
+      int childStart = this.offsets[i];
+      int from = Math.max(start, childStart) - childStart;
+      int to = Math.min(end, this.offsets[i + 1]) - childStart;
+      if (from < to) {
+        hash = Util.concatHash(hash, this.children[i].contentHash(from, to), to - from);
+      }
+    }
+    return hash;
+  }
+
+  /**
+   * Returns the offset within this node at which the range [start, end) is best split
+   * along the tree, i.e. the child boundary nearest to the middle of the range among the
+   * children of the lowest node that spans the whole range. Returns -1 if the range lies
+   * within a single leaf.
+   */
+  int findSplit(int start, int end) {
+    Node node = this;
+    int nodeStart = 0;
+    int middle = (start + end) >>> 1;
+    while (!node.isLeaf()) {
+      Node spanning = null;
+      int spanningStart = 0;
+      int split = -1;
+      for (int i = 0; i < node.children.length; i++) {
+        Node child = node.children[i];
+        int childStart = nodeStart + node.offsets[i];
+        int childEnd = nodeStart + node.offsets[i + 1];
+        if (childStart > start && childStart < end
+            && (split < 0 || Math.abs(childStart - middle) < Math.abs(split - middle))) {
+          split = childStart;
+        }
+        if (childStart <= start && end <= childEnd && spanning == null) {
+          spanning = child;
+          spanningStart = childStart;
         }
       }
-    } else if (this.nodeBody.val() instanceof NodeBody.Leaf) {
-      throw new IllegalStateException("height and node val type are inconsistent");
+      if (split >= 0 || spanning == null) {
+        return split;
+      }
+      node = spanning;
+      nodeStart = spanningStart;
     }
+    return -1;
+  }
 
-    // TODO: try recursing and making a copy if can't mutate in place ??
+  /**
+   * Whether the tree of this node has degraded enough through edits to be worth
+   * compacting, i.e. more than one of its leaves in {@link #FRAGMENTED_LEAVES} is shorter
+   * than {@link #MIN_LEAF}, or it is higher than a tree of valid nodes over as many leaves
+   * could be by more than a level. The trees built from text, and those kept balanced by
+   * persistent edits, have hardly any underfull leaf, and are never compacted. As
+   * {@link #compact(int, int)} leaves none, a compacted tree has to degrade all over
+   * again before it is compacted anew.
+   */
+  boolean isFragmented() {
+    if (this.leafCount <= MAX_CHILDREN) {
+      return false;
+    }
+    if (this.underfullLeafCount > this.leafCount / FRAGMENTED_LEAVES) {
+      return true;
+    }
+    // a level lower, a tree of valid nodes would still hold MIN_CHILDREN^(height - 1) leaves
+    long minLeafCount = 1;
+    for (int i = 1; i < this.height && minLeafCount <= this.leafCount; i++) {
+      minLeafCount *= MIN_CHILDREN;
+    }
+    return this.leafCount < minLeafCount;
+  }
 
-    return success;
+  /**
+   * Returns a balanced tree holding the text of this node in [start, end), built bottom-up
+   * in a single pass over the leaves. The leaves that are at least three quarters full are
+   * reused as they are, and the runs of text between them are packed into leaves of up to
+   * {@link #MAX_LEAF} chars. A run shorter than {@link #MIN_LEAF} is merged with the next
+   * leaf, so that no leaf but a lone root is underfull.
+   */
+  Node compact(int start, int end) {
+    List<Node> leaves = new ArrayList<>();
+    StringBuilder pending = new StringBuilder(2 * MAX_LEAF);
+    this.compact(start, end, leaves, pending);
+    if (pending.length() < MIN_LEAF && !leaves.isEmpty()) {
+      pending.insert(0, leaves.remove(leaves.size() - 1).getLeafChars());
+    }
+    if (pending.length() > 0 || leaves.isEmpty()) {
+      flushLeaves(pending, leaves);
+    }
+    return Node.fromLevel(leaves);
+  }
+
+  private void compact(int start, int end, List<Node> leaves, StringBuilder pending) {
+    if (!this.isLeaf()) {
+      int last = end == 0 ? 0 : this.childAt(end - 1);
+      for (int i = this.childAt(start); i <= last; i++) {
+        int offset = this.offsets[i];
+        int from = Math.max(start, offset) - offset;
+        int to = Math.min(end, this.offsets[i + 1]) - offset;
+        if (from < to) {
+          this.children[i].compact(from, to, leaves, pending);
+        }
+      }
+      return;
+    }
+    if (start == 0 && end == this.length && this.length >= COMPACT_LEAF) {
+      if (pending.length() >= MIN_LEAF) {
+        flushLeaves(pending, leaves);
+      }
+      if (pending.length() == 0) {
+        leaves.add(this);
+        return;
+      }
+    }
+    pending.append(this.getLeafChars(), start, end);
+    // cut full leaves off pending as long as what remains can still make a leaf
+    while (pending.length() >= MAX_LEAF + MIN_LEAF) {
+      cutLeaf(pending, leaves);
+    }
+  }
+
+  // turns pending, of less than MAX_LEAF + MIN_LEAF chars, into one or two leaves
+  private static void flushLeaves(StringBuilder pending, List<Node> leaves) {
+    if (pending.length() > MAX_LEAF) {
+      cutLeaf(pending, leaves);
+    }
+    leaves.add(Node.fromStringPiece(pending.toString()));
+    pending.setLength(0);
+  }
+
+  private static void cutLeaf(StringBuilder pending, List<Node> leaves) {
+    int split = Util.findLeafSplitForBulk(pending, 0, pending.length());
+    leaves.add(Node.fromStringPiece(pending.substring(0, split)));
+    pending.delete(0, split);
+  }
+
+  /**
+   * Returns a copy of this {@link Node} owned by the edit token {@code owner}, or this
+   * node itself if it is already owned by {@code owner}. The copy has an array of
+   * children of its own, while the children themselves are still shared.
+   */
+  Node ownedBy(Object owner) {
+    if (this.owner == owner) {
+      return this;
+    }
+    Node node = new Node(this, owner);
+    if (!this.isLeaf()) {
+      node.children = this.children.clone();
+      node.offsets = this.offsets.clone();
+      node.newlineOffsets = this.newlineOffsets.clone();
+    }
+    return node;
+  }
+
+  /**
+   * Try to replace the interval [start, end) of this {@link Node}, which must be owned by
+   * {@code owner}, with the String {@code s} <b>in place</b>. The nodes on the path to the
+   * leaf holding the interval are taken ownership of on the way down, and their metrics
+   * are updated on the way up. Returns false if the interval does not fall into a single
+   * leaf, or if the leaf would become empty or exceed {@link #MAX_LEAF}.
+   */
+  boolean tryReplaceOwned(int start, int end, String s, Object owner) {
+    if (this.isLeaf()) {
+      CharSequence leafChars = this.getLeafChars();
+      int newLength = leafChars.length() - (end - start) + s.length();
+      if (newLength == 0 || newLength > MAX_LEAF) {
+        return false;
+      }
+      String newString = new StringBuilder(newLength)
+          .append(leafChars, 0, start)
+          .append(s)
+          .append(leafChars, end, leafChars.length())
+          .toString();
+      this.leaf = Leaf.of(newString);
+      this.length = newLength;
+      this.newlineCount = Util.countNewlines(newString);
+      this.underfullLeafCount = newLength < MIN_LEAF ? 1 : 0;
+      this.hashed = false;
+      return true;
+    }
+    int index = this.childSpanning(start, end);
+    if (index < 0) {
+      return false;
+    }
+    int offset = this.offsets[index];
+    Node child = this.children[index].ownedBy(owner);
+    this.children[index] = child;
+    int oldNewlineCount = child.getNewlineCount();
+    int oldUnderfullLeafCount = child.underfullLeafCount;
+    // an edit at either end of the child may join or split a "\r\n" with its siblings
+    boolean touchesEdge = start == offset || end == offset + child.getLength();
+    if (!child.tryReplaceOwned(start - offset, end - offset, s, owner)) {
+      return false;
+    }
+    this.underfullLeafCount += child.underfullLeafCount - oldUnderfullLeafCount;
+    if (touchesEdge) {
+      this.updatePrefixes(index);
+    } else {
+      this.shiftPrefixes(
+          index, s.length() - (end - start), child.getNewlineCount() - oldNewlineCount);
+    }
+    return true;
   }
 
   /**
@@ -388,85 +719,112 @@ final class Node {
    * onto the {@link StringBuilder}.
    */
   void toStringRec(StringBuilder sb) {
-    if (this.nodeBody.val() instanceof NodeBody.Leaf) {
-      String val = this.getLeaf();
-      sb.append(val);
-    } else if (this.nodeBody.val() instanceof NodeBody.Internal) {
-      List<Node> children = this.getChildren();
-      for (Node child : children) {
-        child.toStringRec(sb);
-      }
-    } else {
-      throw new IllegalStateException("unreachable state");
+    if (this.isLeaf()) {
+      sb.append(this.getLeafChars());
+      return;
+    }
+    for (Node child : this.children) {
+      child.toStringRec(sb);
     }
   }
 
   /** Returns the String that this {@link Node} effectively holds. */
   String getString() {
-    if (this.getHeight() == 0) {
-      if (nodeBody.val() instanceof NodeBody.Leaf) {
-        return this.getLeaf();
-      } else {
-        throw new IllegalStateException("height and node type inconsistent");
-      }
+    if (this.isLeaf()) {
+      return this.getLeaf();
     }
-    StringBuilder sb = new StringBuilder();
+    StringBuilder sb = new StringBuilder(this.getLength());
     this.toStringRec(sb);
     return sb.toString();
   }
 
   /** The height of this node in the tree. */
   int getHeight() {
-    return this.nodeBody.height();
+    return this.height;
   }
 
   /** The length of String that this {@link Node} effectively holds. */
   int getLength() {
-    return this.nodeBody.length();
+    return this.length;
   }
 
   /** The number of new line count in the String that this {@link Node} effectively holds. */
   int getNewlineCount() {
-    return this.nodeBody.newlineCount();
+    return this.newlineCount;
+  }
+
+  /** Whether the String that this {@link Node} effectively holds ends with '\r'. */
+  boolean endsWithCarriageReturn() {
+    Node node = this;
+    while (!node.isLeaf()) {
+      node = node.children[node.children.length - 1];
+    }
+    return node.leaf.endsWithCarriageReturn();
+  }
+
+  /** Whether the String that this {@link Node} effectively holds starts with '\n'. */
+  boolean startsWithLineFeed() {
+    Node node = this;
+    while (!node.isLeaf()) {
+      node = node.children[0];
+    }
+    return node.leaf.startsWithLineFeed();
+  }
+
+  boolean isLeaf() {
+    return this.children == null;
   }
 
-  NodeBody getNodeBody() {
-    return this.nodeBody;
+  /** Returns the number of children of this internal node. */
+  int getChildCount() {
+    return this.children.length;
   }
 
-  private boolean isLeaf() {
-    return this.getHeight() == 0;
+  /** Returns the child at {@code index} of this internal node. */
+  Node getChild(int index) {
+    return this.children[index];
   }
 
   /**
-   * Returns list of nodes i.e. children of this {@link NodeBody.Internal} node.
+   * Returns a fixed-size list view of the children of this internal node. Traversals
+   * should use {@link #getChild(int)} instead, which does not allocate.
    */
   List<Node> getChildren() {
-    if (this.nodeBody.val() instanceof NodeBody.Leaf) {
+    if (this.isLeaf()) {
       throw new UnsupportedOperationException("getChildren() called on leaf");
     }
-    @SuppressWarnings("unchecked")
-    List<Node> nodes = (List<Node>) this.nodeBody.val().get();
-    return nodes;
+    return Arrays.asList(this.children);
   }
 
-  /** Returns the String in the {@link NodeBody.Leaf} node. */
-  private String getLeaf() {
-    if (this.nodeBody.val() instanceof NodeBody.Internal) {
+  /** Returns the String in the leaf node. */
+  String getLeaf() {
+    if (!this.isLeaf()) {
       throw new UnsupportedOperationException("getLeaf() called on internal node");
     }
-    return (String) this.nodeBody.val().get();
+    return this.leaf.get();
+  }
+
+  /** Returns the {@link Leaf} of this leaf node, or null for an internal node. */
+  Leaf getLeafValue() {
+    return this.leaf;
+  }
+
+  /**
+   * Returns the chars in the leaf node, read without building the String of leaves
+   * storing them otherwise, see {@link Leaf#sequence()}.
+   */
+  CharSequence getLeafChars() {
+    if (!this.isLeaf()) {
+      throw new UnsupportedOperationException("getLeafChars() called on internal node");
+    }
+    return this.leaf.sequence();
   }
 
   private boolean isValidNode() {
-    if (this.nodeBody.val() instanceof NodeBody.Leaf) {
-      return this.getLeaf().length() >= MIN_LEAF;
-    } else if (this.nodeBody.val() instanceof NodeBody.Internal) {
-      List<Node> nodes = this.getChildren();
-      return nodes.stream().allMatch((node) -> node.getLength() >= MIN_CHILDREN);
-    } else {
-      throw new UnsupportedOperationException("Unreachable state");
+    if (this.isLeaf()) {
+      return this.getLength() >= MIN_LEAF;
     }
+    return this.children.length >= MIN_CHILDREN;
   }
 
   @Override public boolean equals(Object o) {
@@ -477,53 +835,29 @@ final class Node {
       return false;
     }
     Node otherNode = (Node) o;
-    return this.nodeBody.equals(otherNode.nodeBody);
+    return otherNode.height == this.height
+        && otherNode.length == this.length
+        && otherNode.newlineCount == this.newlineCount
+        && (this.isLeaf()
+            ? this.leaf.equals(otherNode.leaf)
+            : Arrays.equals(this.children, otherNode.children));
   }
 
   @Override public int hashCode() {
     int hash = 17;
-    hash += 31 * this.nodeBody.hashCode() + hash;
+    hash += 31 * hash + this.height;
+    hash += 31 * hash + this.length;
+    hash += 31 * hash + this.newlineCount;
+    hash += 31 * hash + (this.isLeaf() ? this.leaf.hashCode() : Arrays.hashCode(this.children));
     return hash;
   }
 
   @Override public String toString() {
-    return "Node: {" + "\n\t" + this.nodeBody.toString() + "\n}";
-  }
-
-  // This class solely exists to hold the return value of getChildIndexOffset()
-  static class ChildIndexOffset {
-    int index;
-    int offset;
-
-    ChildIndexOffset(int index, int offset) {
-      this.index = index;
-      this.offset = offset;
-    }
-
-    @Override public boolean equals(Object obj) {
-      if (this == obj) {
-        return true;
-      }
-      if (!(obj instanceof ChildIndexOffset)) {
-        return false;
-      }
-      ChildIndexOffset cio = (ChildIndexOffset) obj;
-      return this.index == cio.index
-          && this.offset == cio.offset;
-    }
-
-    @Override public int hashCode() {
-      int hash = 17;
-      hash += 31 * this.index + hash;
-      hash += 31 * this.offset + hash;
-      return hash;
-    }
-
-    @Override public String toString() {
-      return "ChildIndexOffset: {"
-          + "\n\tindex: " + this.index
-          + "\n\toffset: " + this.offset
-          + "\n}";
-    }
+    return "Node: {"
+        + "\n\theight: " + this.height
+        + "\n\tlength: " + this.length
+        + "\n\tnewlineCount: " + this.newlineCount
+        + "\n\tval: " + (this.isLeaf() ? this.leaf : "INTERNAL " + this.children.length)
+        + "\n}";
   }
 }
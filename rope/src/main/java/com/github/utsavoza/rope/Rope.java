@@ -1,12 +1,30 @@
 package com.github.utsavoza.rope;
 
-import com.github.utsavoza.rope.Node.ChildIndexOffset;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import static com.github.utsavoza.rope.Node.MAX_CHILDREN;
 import static com.github.utsavoza.rope.Node.MAX_LEAF;
-import static com.github.utsavoza.rope.Node.getChildIndexOffset;
+import static com.github.utsavoza.rope.Node.MIN_LEAF;
 import static com.github.utsavoza.rope.Util.findLeafSplitForBulk;
 
 /**
@@ -20,7 +38,8 @@ import static com.github.utsavoza.rope.Util.findLeafSplitForBulk;
  * implementation intends to provide immutable version of Ropes (also known as
  * <a href="https://en.wikipedia.org/wiki/Persistent_data_structure">persistent</a>.
  * Ideally, if there are many copies of similar strings, the common parts should be
- * shared.
+ * shared. Ropes are immutable, and can be shared between threads without synchronization,
+ * see {@link Document}.
  *
  * <p><strong>Examples:</strong>
  * <br>- Create a {@link Rope} from {@link String}
@@ -43,7 +62,7 @@ import static com.github.utsavoza.rope.Util.findLeafSplitForBulk;
  * <pre>
  *   Rope a = Rope.from("hello world");
  *   Rope b = a.slice(1, 9);
- *   assertEquals(b.toString(), "ello wo");
+ *   assertEquals(b.toString(), "ello wor");
  * </pre>
  *
  * <br>- Replace a part of a {@link Rope}
@@ -62,11 +81,16 @@ import static com.github.utsavoza.rope.Util.findLeafSplitForBulk;
  *      .build();
  * </pre>
  */
-public final class Rope {
+public final class Rope implements CharSequence {
 
-  private Node root;
-  private int start;
-  private int length;
+  private static final int WRITE_BUFFERS = 4;
+  private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+
+  private final Node root;
+  private final int start;
+  private final int length;
+  // the leaf of the last charAt(), immutable so that it can be swapped racily
+  private Chunk lastChunk;
 
   private Rope(Node root, int start, int length) {
     this.root = root;
@@ -79,13 +103,41 @@ public final class Rope {
     return Rope.fromNode(Node.fromString(s));
   }
 
+  /**
+   * Create a Rope from the given String, building its leaves in parallel on {@code pool}.
+   * The result is structurally identical to that of {@link #from(String)}.
+   */
+  public static Rope from(String s, ForkJoinPool pool) {
+    return new Rope.Builder()
+        .pushCharSequence(s, 0, s.length(), pool)
+        .build();
+  }
+
+  /**
+   * Create a Rope from the file at {@code path}, decoded with {@code charset}. The file is
+   * memory-mapped, and its leaves are decoded only when they are first read, while a
+   * bounded number of decoded leaves is cached. The file is expected not to change while
+   * the rope, or any rope derived from it, is in use. The charset must be stateless, such
+   * as UTF-8, UTF-16BE/LE, US-ASCII or ISO-8859-1.
+   */
+  public static Rope fromPath(Path path, Charset charset) throws IOException {
+    return Rope.fromNode(MappedText.load(path, charset));
+  }
+
+  // compacts the tree first if edits have left it fragmented, see Node#isFragmented()
   private static Rope fromNode(Node node) {
+    if (node.isFragmented()) {
+      node = node.compact(0, node.getLength());
+    }
     return new Rope(node, 0, node.getLength());
   }
 
   private String extractString() {
-    StringBuilder sb = new StringBuilder();
-    this.toStringRec(sb);
+    StringBuilder sb = new StringBuilder(this.length);
+    Cursor cursor = this.cursor();
+    do {
+      sb.append(cursor.leafChars());
+    } while (cursor.nextLeaf());
     return sb.toString();
   }
 
@@ -98,36 +150,213 @@ public final class Rope {
    * is equal to number of Unicode code units in the string. The value
    * returned is equivalent to that returned by {@link String#length()}.
    */
-  public int length() {
+  @Override public int length() {
     return this.length;
   }
 
+  /**
+   * Returns the number of lines in this rope. Each of "\r\n", "\r" and "\n" ends a line,
+   * and the text following the last line break, even if empty, is a line of its own.
+   */
+  public int lineCount() {
+    return lineOfOffset(this.length) + 1;
+  }
+
+  /**
+   * Returns the zero based index of the line that contains {@code offset}. An offset
+   * between the '\r' and the '\n' of a "\r\n" belongs to the line that it ends.
+   */
+  public int lineOfOffset(int offset) {
+    if (offset < 0 || offset > this.length) {
+      throw new IllegalArgumentException(
+          "offset " + offset + " is out of bounds for current rope");
+    }
+    int end = this.start + this.length;
+    int line = this.countLineBreaksBefore(this.start + offset)
+        - this.countLineBreaksBefore(this.start);
+    if (offset == this.length && offset > 0 && this.isSplitCrlf(end)) {
+      // the '\r' this rope ends with is a line break of its own
+      line++;
+    }
+    return line;
+  }
+
+  /** Returns the offset at which the zero based {@code line} of this rope starts. */
+  public int offsetOfLine(int line) {
+    if (line < 0 || line >= this.lineCount()) {
+      throw new IllegalArgumentException(
+          "line " + line + " is out of bounds for current rope");
+    }
+    if (line == 0) {
+      return 0;
+    }
+    int offset = this.root.offsetOfLine(line + this.countLineBreaksBefore(this.start));
+    return Math.min(offset, this.start + this.length) - this.start;
+  }
+
+  /** Returns the zero based {@code line} of this rope, without its line break. */
+  public Rope line(int line) {
+    int start = this.offsetOfLine(line);
+    if (line + 1 == this.lineCount()) {
+      return this.slice(start, this.length);
+    }
+    int end = this.offsetOfLine(line + 1) - 1;
+    if (this.root.charAt(this.start + end) == '\n'
+        && end > start
+        && this.root.charAt(this.start + end - 1) == '\r') {
+      end--;
+    }
+    return this.slice(start, end);
+  }
+
+  // number of line breaks of the root that end at or before offset
+  private int countLineBreaksBefore(int offset) {
+    int count = this.root.countNewlinesBefore(offset);
+    return this.isSplitCrlf(offset) ? count - 1 : count;
+  }
+
+  // whether offset falls between the '\r' and the '\n' of a "\r\n" in the root
+  private boolean isSplitCrlf(int offset) {
+    return offset > 0
+        && offset < this.root.getLength()
+        && this.root.charAt(offset - 1) == '\r'
+        && this.root.charAt(offset) == '\n';
+  }
+
+  /**
+   * Returns the char at {@code index} of this rope. The leaf of the previous lookup is
+   * memoized, so that accesses falling in the same leaf are O(1) and others O(log n).
+   * Use a {@link Cursor} to walk through the rope.
+   */
+  @Override public char charAt(int index) {
+    if (index < 0 || index >= this.length) {
+      throw new IndexOutOfBoundsException(
+          "index " + index + " is out of bounds for current rope");
+    }
+    int position = this.start + index;
+    Chunk chunk = this.lastChunk;
+    if (chunk == null || position < chunk.start || position >= chunk.start + chunk.text.length()) {
+      chunk = Chunk.at(this.root, position);
+      this.lastChunk = chunk;
+    }
+    return chunk.text.charAt(position - chunk.start);
+  }
+
+  /**
+   * Returns a slice of this rope from interval [start, end), sharing structure with this
+   * rope as {@link #slice(int, int)} does.
+   */
+  @Override public Rope subSequence(int start, int end) {
+    if (start < 0 || end > this.length || start > end) {
+      throw new IndexOutOfBoundsException(
+          "[" + start + ", " + end + ") interval is out of bounds for current rope");
+    }
+    return this.slice(start, end);
+  }
+
+  /**
+   * Returns a stream of the chars of this rope. The stream is sized, and when run in
+   * parallel it is split along the subtrees of the rope, without copying any text.
+   */
+  @Override public IntStream chars() {
+    return StreamSupport.intStream(new CharSpliterator(this, false), false);
+  }
+
+  /**
+   * Returns a stream of the code points of this rope, split along the subtrees of the
+   * rope when run in parallel. An unpaired surrogate is streamed as is.
+   */
+  @Override public IntStream codePoints() {
+    return StreamSupport.intStream(new CharSpliterator(this, true), false);
+  }
+
+  /**
+   * Returns a stream of the leaves of this rope, in order, as the strings they hold.
+   * The first and last leaves are cut to the bounds of this rope. When run in parallel,
+   * the stream is split along the subtrees of the rope.
+   */
+  public Stream<String> chunks() {
+    return StreamSupport.stream(new ChunkSpliterator(this), false);
+  }
+
+  /**
+   * Returns a stream of the {@link #lineCount()} lines of this rope, as returned by
+   * {@link #line(int)}. The stream is sized, and when run in parallel it is split along
+   * the subtrees of the rope.
+   */
+  public Stream<Rope> lines() {
+    return StreamSupport.stream(new LineSpliterator(this, 0, this.lineCount()), false);
+  }
+
+  /**
+   * Returns the offset of the first occurrence of {@code s} in this rope, or -1 if there
+   * is none. The leaves are searched in place, see {@link #indexOf(CharSequence, int)}.
+   */
+  public int indexOf(CharSequence s) {
+    return this.indexOf(s, 0);
+  }
+
+  /**
+   * Returns the offset of the first occurrence of {@code s} in this rope starting at or
+   * after {@code from}, or -1 if there is none, as {@link String#indexOf(String, int)}
+   * does. The search skips through the leaves with the Boyer-Moore-Horspool algorithm,
+   * without copying them, and finds occurrences spanning several leaves.
+   */
+  public int indexOf(CharSequence s, int from) {
+    return new Search(this, s).indexOf(from);
+  }
+
+  /** Returns the offset of the last occurrence of {@code s} in this rope, or -1. */
+  public int lastIndexOf(CharSequence s) {
+    return this.lastIndexOf(s, this.length);
+  }
+
+  /**
+   * Returns the offset of the last occurrence of {@code s} in this rope starting at or
+   * before {@code from}, or -1 if there is none, as {@link String#lastIndexOf(String, int)}
+   * does.
+   */
+  public int lastIndexOf(CharSequence s, int from) {
+    return new Search(this, s).lastIndexOf(from);
+  }
+
+  /**
+   * Returns a stream of the offsets of the occurrences of {@code s} in this rope, from
+   * left to right. An occurrence is searched for after the end of the previous one, so
+   * that occurrences do not overlap, as with {@link java.util.regex.Matcher#find()}. The
+   * stream is lazy, and searches the leaves in place.
+   */
+  public IntStream findAll(CharSequence s) {
+    return new Search(this, s).findAll();
+  }
+
+  /** Returns a {@link Cursor} positioned at the start of this rope. */
+  public Cursor cursor() {
+    return new Cursor(this, 0);
+  }
+
+  /** Returns a {@link Cursor} positioned at {@code offset} of this rope. */
+  public Cursor cursor(int offset) {
+    return new Cursor(this, offset);
+  }
+
   /**
    * Returns a new rope that is a slice of this rope from interval
    * [start, end). The result is equivalent to that of {@link String#substring(int, int)}.
+   * The slice shares the subtrees that lie entirely within the interval with this
+   * rope, and only the leaves at the boundaries of the interval are copied.
    */
   public Rope slice(int start, int end) {
-    if (start < this.start || end > this.start + this.length) {
+    if (start < 0 || end > this.length || start > end) {
       throw new IllegalArgumentException(
           "[" + start + ", " + end + ") interval is out of bounds for current rope");
     }
-    Node root = this.root;
-    start += this.start;
-    end += this.start - 1;
-    while (root.getHeight() > 0) {
-      ChildIndexOffset indexOffset = getChildIndexOffset(root.getChildren(), start, end);
-      if (indexOffset != null) {
-        int index = indexOffset.index;
-        int offset = indexOffset.offset;
-        root = root.getChildren().get(index);
-        start -= offset;
-        end -= offset;
-      } else {
-        break;
-      }
+    if (start == 0 && end == this.length) {
+      return this;
     }
-    // Could be optimized by implementing custom iterator for rope ?
-    return Rope.from(root.getString().substring(start, end - start + 1));
+    Rope.Builder builder = new Rope.Builder();
+    this.root.subsequence(builder, this.start + start, this.start + end);
+    return builder.build();
   }
 
   /**
@@ -136,16 +365,13 @@ public final class Rope {
    * the given range with {@code newString}.
    */
   public Rope replace(int start, int end, String newString) {
-    if (start < this.start || end > this.start + this.length) {
+    if (start < 0 || end > this.length || start > end) {
       throw new IllegalArgumentException(
           "[" + start + ", " + end + ") interval is out of bounds for current rope");
     }
     // is a trivial replace operation worth making a new rope copy ??
     if (this.isFull()) {
-      Node newRoot = new Node(this.root.getNodeBody());
-      // defaults to avoiding replacing in place
-      newRoot.replaceString(start, end, newString, false);
-      return Rope.fromNode(newRoot);
+      return Rope.fromNode(this.root.replaceString(start, end, newString));
     } else {
       Rope.Builder builder = new Rope.Builder();
       this.root.subsequence(builder, this.start, this.start + start);
@@ -155,6 +381,63 @@ public final class Rope {
     }
   }
 
+  /**
+   * Returns the {@link Delta} that turns this rope into {@code other}, i.e. such that
+   * {@code diff.apply(this)} equals {@code other}. The subtrees the two ropes share, as
+   * ropes derived from one another through {@link #replace}, {@link #concat} or a
+   * {@link Delta} do, are skipped without being read, so that the cost is proportional to
+   * the size of the edits rather than to the size of the ropes.
+   */
+  public Delta diff(Rope other) {
+    return Diff.compute(this.normalize().root, other.normalize().root);
+  }
+
+  /**
+   * Returns a rope of the same contents as this one over a balanced tree of well filled
+   * leaves, rebuilt in a single pass. The leaves of this rope that are long enough are
+   * shared with the result, and the runs of short leaves that long editing sessions leave
+   * behind are packed together. Ropes are also compacted automatically when an edit
+   * leaves their tree fragmented past a threshold.
+   */
+  public Rope compact() {
+    return Rope.fromNode(this.root.compact(this.start, this.start + this.length));
+  }
+
+  /** Returns the statistics of the shape of the tree of this rope, see {@link RopeStats}. */
+  public RopeStats stats() {
+    return RopeStats.of(this.root, null);
+  }
+
+  /**
+   * Returns the statistics of the shape of the tree of this rope, along with an estimate
+   * of the memory it shares with the tree of {@code other}.
+   */
+  public RopeStats stats(Rope other) {
+    return RopeStats.of(this.root, other.root);
+  }
+
+  // an estimate of the bytes retained by the tree of this rope and not by that of base,
+  // see RopeStats#addedBytes(Node, Node)
+  long addedBytes(Rope base) {
+    return RopeStats.addedBytes(this.root, base == null ? null : base.root);
+  }
+
+  /**
+   * Returns a {@link Transient} editor initialized with the contents of this rope. This
+   * rope is left untouched by the edits made through the editor.
+   */
+  public Transient asTransient() {
+    return new Transient(this.normalize().root);
+  }
+
+  /**
+   * Returns an {@link Appender} appending to the contents of this rope. This rope is left
+   * untouched by the appends made through it.
+   */
+  public Appender asAppender() {
+    return new Appender(this.normalize().root);
+  }
+
   /**
    * Concatenate {@code anotherRope} with this rope, and return a new rope
    * resulting from the concatenation.
@@ -164,12 +447,118 @@ public final class Rope {
       // should this be handled silently?
       throw new IllegalArgumentException("Attempting to concat this rope with null");
     }
-    Node newRoot = new Node(this.root.getNodeBody());
-    return Rope.fromNode(newRoot.concat(anotherRope.root));
+    return Rope.fromNode(this.root.concat(anotherRope.root));
+  }
+
+  /**
+   * Appends the contents of this rope to {@code out} leaf by leaf, without building the
+   * String that {@link #toString()} would return.
+   */
+  public void writeTo(Appendable out) throws IOException {
+    Cursor cursor = this.cursor();
+    do {
+      out.append(cursor.leafChars());
+    } while (cursor.nextLeaf());
+  }
+
+  /**
+   * Writes the contents of this rope to {@code writer} leaf by leaf, without building the
+   * String that {@link #toString()} would return.
+   */
+  public void writeTo(Writer writer) throws IOException {
+    Cursor cursor = this.cursor();
+    do {
+      writer.write(cursor.leaf());
+    } while (cursor.nextLeaf());
+  }
+
+  /**
+   * Writes the contents of this rope encoded with {@code charset} to {@code channel}.
+   * The leaves are encoded into a fixed set of reusable buffers, which are written with
+   * a gathering write whenever they are all full, so that the memory needed is constant
+   * whatever the length of the rope. Unmappable chars are replaced with the charset's
+   * replacement bytes.
+   */
+  public void writeTo(WritableByteChannel channel, Charset charset) throws IOException {
+    CharsetEncoder encoder = charset.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    ByteBuffer[] buffers = new ByteBuffer[WRITE_BUFFERS];
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+    }
+    int current = 0;
+    // the chars being encoded, copied from the leaves so that no buffer is made per leaf,
+    // along with the high surrogate the previous leaf may have ended with
+    CharBuffer in = CharBuffer.allocate(MAX_LEAF + 1);
+    Cursor cursor = this.cursor();
+    do {
+      CharSequence leaf = cursor.leafChars();
+      for (int i = 0; i < leaf.length(); ) {
+        int count = Math.min(leaf.length() - i, in.remaining());
+        copyChars(leaf, i, i + count, in);
+        i += count;
+        in.flip();
+        while (encoder.encode(in, buffers[current], false).isOverflow()) {
+          current = nextWriteBuffer(channel, buffers, current);
+        }
+        in.compact();
+      }
+    } while (cursor.nextLeaf());
+    in.flip();
+    while (encoder.encode(in, buffers[current], true).isOverflow()) {
+      current = nextWriteBuffer(channel, buffers, current);
+    }
+    while (encoder.flush(buffers[current]).isOverflow()) {
+      current = nextWriteBuffer(channel, buffers, current);
+    }
+    write(channel, buffers, current + 1);
   }
 
-  private void toStringRec(StringBuilder sb) {
-    this.root.toStringRec(sb);
+  // copies the chars of s from start to end to the position of buffer, advancing it
+  private static void copyChars(CharSequence s, int start, int end, CharBuffer buffer) {
+    int position = buffer.position();
+    if (s instanceof String) {
+      ((String) s).getChars(start, end, buffer.array(), buffer.arrayOffset() + position);
+      buffer.position(position + end - start);
+    } else {
+      for (int i = start; i < end; i++) {
+        buffer.put(s.charAt(i));
+      }
+    }
+  }
+
+  private static int nextWriteBuffer(WritableByteChannel channel, ByteBuffer[] buffers,
+      int current) throws IOException {
+    if (current + 1 < buffers.length) {
+      return current + 1;
+    }
+    write(channel, buffers, buffers.length);
+    return 0;
+  }
+
+  private static void write(WritableByteChannel channel, ByteBuffer[] buffers, int count)
+      throws IOException {
+    long remaining = 0;
+    for (int i = 0; i < count; i++) {
+      buffers[i].flip();
+      remaining += buffers[i].remaining();
+    }
+    if (channel instanceof GatheringByteChannel) {
+      GatheringByteChannel gatheringChannel = (GatheringByteChannel) channel;
+      while (remaining > 0) {
+        remaining -= gatheringChannel.write(buffers, 0, count);
+      }
+    } else {
+      for (int i = 0; i < count; i++) {
+        while (buffers[i].hasRemaining()) {
+          channel.write(buffers[i]);
+        }
+      }
+    }
+    for (int i = 0; i < count; i++) {
+      buffers[i].clear();
+    }
   }
 
   private Rope normalize() {
@@ -190,6 +579,13 @@ public final class Rope {
     }
   }
 
+  /**
+   * Returns whether {@code obj} is a rope holding the same text as this rope, however
+   * either is split in leaves. Ropes of different content hashes are told apart in
+   * O(log n), or O(1) for ropes that are not slices. Otherwise both trees are walked in
+   * step, skipping the subtrees they share at the same offset, so that comparing a rope
+   * with an edited version of it costs O(edit * log n) rather than O(n).
+   */
   @Override public boolean equals(Object obj) {
     if (this == obj) {
       return true;
@@ -198,63 +594,799 @@ public final class Rope {
       return false;
     }
     Rope otherRope = (Rope) obj;
-    return this.length == otherRope.length
-        && this.start == otherRope.start
-        && this.root.equals(otherRope.root);
+    if (this.length != otherRope.length) {
+      return false;
+    }
+    if (this.root == otherRope.root && this.start == otherRope.start) {
+      return true;
+    }
+    return this.contentHash() == otherRope.contentHash()
+        && Diff.rangeEquals(this.root, this.start, otherRope.root, otherRope.start, this.length);
   }
 
+  /** Returns a hash of the text of this rope, consistent with {@link #equals(Object)}. */
   @Override public int hashCode() {
-    int hash = 17;
-    hash += 31 * this.length + hash;
-    hash += 31 * this.start + hash;
-    hash += 31 * this.root.hashCode() + hash;
-    return hash;
+    long hash = this.contentHash();
+    return (int) (hash ^ (hash >>> 32));
   }
 
-  /** Builder utility to create an instance of Rope. */
-  public static class Builder {
+  private long contentHash() {
+    return this.root.contentHash(this.start, this.start + this.length);
+  }
+
+  /**
+   * A cursor over the chars of a {@link Rope}. The cursor keeps the path from the root
+   * to the leaf it is positioned in, so that moving to an adjacent char or leaf is
+   * amortized O(1), and seeking to an arbitrary offset is O(log n). A cursor is not
+   * thread safe, whereas the rope it walks is.
+   *
+   * <pre>
+   *   Rope.Cursor cursor = rope.cursor();
+   *   while (cursor.hasNext()) {
+   *     char c = cursor.next();
+   *   }
+   * </pre>
+   */
+  public static final class Cursor {
+
+    private final Rope rope;
+    // path[i + 1] is the child at childIndices[i] of path[i], path[0] being the root
+    private final Node[] path;
+    private final int[] childIndices;
+    private CharSequence leaf;
+    // offsets of the leaf and of the cursor within the root
+    private int leafStart;
+    private int position;
+
+    private Cursor(Rope rope, int offset) {
+      this.rope = rope;
+      this.path = new Node[rope.root.getHeight() + 1];
+      this.childIndices = new int[rope.root.getHeight()];
+      this.seek(offset);
+    }
+
+    /** Returns the offset of this cursor within the rope. */
+    public int offset() {
+      return this.position - this.rope.start;
+    }
+
+    /**
+     * Moves this cursor to {@code offset} of the rope. Seeking within the current leaf
+     * is O(1), otherwise the path is rebuilt from the root in O(log n).
+     */
+    public Cursor seek(int offset) {
+      if (offset < 0 || offset > this.rope.length) {
+        throw new IllegalArgumentException(
+            "offset " + offset + " is out of bounds for current rope");
+      }
+      int position = this.rope.start + offset;
+      if (this.leaf == null
+          || position < this.leafStart
+          || position >= this.leafStart + this.leaf.length()) {
+        this.descend(position);
+      }
+      this.position = position;
+      return this;
+    }
+
+    public boolean hasNext() {
+      return this.position < this.rope.start + this.rope.length;
+    }
+
+    /** Returns the char at the cursor and moves the cursor past it. */
+    public char next() {
+      if (!this.hasNext()) {
+        throw new NoSuchElementException();
+      }
+      if (this.position == this.leafStart + this.leaf.length()) {
+        this.moveToNextLeaf();
+      }
+      return this.leaf.charAt(this.position++ - this.leafStart);
+    }
+
+    public boolean hasPrevious() {
+      return this.position > this.rope.start;
+    }
+
+    /** Returns the char before the cursor and moves the cursor before it. */
+    public char previous() {
+      if (!this.hasPrevious()) {
+        throw new NoSuchElementException();
+      }
+      if (this.position == this.leafStart) {
+        this.moveToPreviousLeaf();
+      }
+      return this.leaf.charAt(--this.position - this.leafStart);
+    }
+
+    /**
+     * Returns the text of the leaf this cursor was last positioned in, restricted to
+     * the rope. The String of the leaf is returned as is, unless the rope covers a part of
+     * it only or the leaf stores its chars in another form.
+     */
+    public String leaf() {
+      int start = Math.max(this.leafStart, this.rope.start);
+      int end = Math.min(this.leafStart + this.leaf.length(), this.rope.start + this.rope.length);
+      if (start == this.leafStart && end == this.leafStart + this.leaf.length()) {
+        return this.leaf.toString();
+      }
+      return this.leaf.subSequence(start - this.leafStart, end - this.leafStart).toString();
+    }
+
+    // the chars of leaf(), without building the String of leaves storing them otherwise
+    CharSequence leafChars() {
+      int start = Math.max(this.leafStart, this.rope.start);
+      int end = Math.min(this.leafStart + this.leaf.length(), this.rope.start + this.rope.length);
+      if (start == this.leafStart && end == this.leafStart + this.leaf.length()) {
+        return this.leaf;
+      }
+      return this.leaf.subSequence(start - this.leafStart, end - this.leafStart);
+    }
+
+    /** Returns the offset within the rope at which {@link #leaf()} starts. */
+    public int leafOffset() {
+      return Math.max(this.leafStart, this.rope.start) - this.rope.start;
+    }
 
+    /**
+     * Moves this cursor to the start of the next leaf, returns false and leaves the
+     * cursor untouched if the current leaf is the last one of the rope.
+     */
+    public boolean nextLeaf() {
+      if (this.leafStart + this.leaf.length() >= this.rope.start + this.rope.length) {
+        return false;
+      }
+      this.moveToNextLeaf();
+      this.position = this.leafStart;
+      return true;
+    }
+
+    /**
+     * Moves this cursor to the start of the previous leaf, returns false and leaves the
+     * cursor untouched if the current leaf is the first one of the rope.
+     */
+    public boolean previousLeaf() {
+      if (this.leafStart <= this.rope.start) {
+        return false;
+      }
+      this.moveToPreviousLeaf();
+      this.position = Math.max(this.leafStart, this.rope.start);
+      return true;
+    }
+
+    private void descend(int position) {
+      Node node = this.rope.root;
+      int nodeStart = 0;
+      this.path[0] = node;
+      for (int level = 0; level < this.childIndices.length; level++) {
+        int i = node.childAt(position - nodeStart);
+        nodeStart += node.getChildOffset(i);
+        node = node.getChild(i);
+        this.childIndices[level] = i;
+        this.path[level + 1] = node;
+      }
+      this.leaf = node.getLeafChars();
+      this.leafStart = nodeStart;
+    }
+
+    private void moveToNextLeaf() {
+      int level = this.childIndices.length - 1;
+      while (this.childIndices[level] + 1 == this.path[level].getChildCount()) {
+        level--;
+      }
+      this.childIndices[level]++;
+      for (int i = level; i < this.childIndices.length; i++) {
+        this.path[i + 1] = this.path[i].getChild(this.childIndices[i]);
+        if (i + 1 < this.childIndices.length) {
+          this.childIndices[i + 1] = 0;
+        }
+      }
+      this.leafStart += this.leaf.length();
+      this.leaf = this.path[this.path.length - 1].getLeafChars();
+    }
+
+    private void moveToPreviousLeaf() {
+      int level = this.childIndices.length - 1;
+      while (this.childIndices[level] == 0) {
+        level--;
+      }
+      this.childIndices[level]--;
+      for (int i = level; i < this.childIndices.length; i++) {
+        this.path[i + 1] = this.path[i].getChild(this.childIndices[i]);
+        if (i + 1 < this.childIndices.length) {
+          this.childIndices[i + 1] = this.path[i + 1].getChildCount() - 1;
+        }
+      }
+      this.leaf = this.path[this.path.length - 1].getLeafChars();
+      this.leafStart -= this.leaf.length();
+    }
+  }
+
+  /**
+   * A transient (owned) editor of a rope, meant for applying many edits in a row. The
+   * editor holds an edit token, and takes ownership of the nodes it edits by copying them
+   * the first time they are touched. Owned nodes are then updated in place, so that an edit
+   * which stays within a leaf allocates neither a new path nor a new tree. Calling
+   * {@link #persistent()} returns the edited rope and ends the editor, after which the
+   * nodes it owned are never mutated again. A transient is not thread safe.
+   *
+   * <pre>
+   *   Rope.Transient editor = rope.asTransient();
+   *   editor.insert(0, "// generated\n");
+   *   editor.replace(100, 105, "value");
+   *   Rope edited = editor.persistent();
+   * </pre>
+   */
+  public static final class Transient {
+
+    private Object owner = new Object();
     private Node root;
 
-    public Builder pushRope(Rope rope) {
-      rope.root.subsequence(this, rope.start, rope.start + rope.length);
+    private Transient(Node root) {
+      this.root = root;
+    }
+
+    public int length() {
+      this.ensureEditable();
+      return this.root.getLength();
+    }
+
+    /** Replace the interval [start, end) with {@code newString}. */
+    public Transient replace(int start, int end, String newString) {
+      this.ensureEditable();
+      if (start < 0 || end > this.root.getLength() || start > end) {
+        throw new IllegalArgumentException(
+            "[" + start + ", " + end + ") interval is out of bounds for current rope");
+      }
+      this.root = this.root.ownedBy(this.owner);
+      if (!this.root.tryReplaceOwned(start, end, newString, this.owner)) {
+        // the edit spans leaves or overflows one, rebuild the affected path
+        this.root = this.root.replaceString(start, end, newString);
+      }
       return this;
     }
 
-    public Builder pushString(String s) {
-      if (s.length() <= MAX_LEAF) {
-        if (!s.isEmpty()) {
-          return pushShortString(s);
+    public Transient insert(int offset, String s) {
+      return this.replace(offset, offset, s);
+    }
+
+    public Transient delete(int start, int end) {
+      return this.replace(start, end, "");
+    }
+
+    /** Returns the edited rope and ends this editor. */
+    public Rope persistent() {
+      this.ensureEditable();
+      this.owner = null;
+      return Rope.fromNode(this.root);
+    }
+
+    private void ensureEditable() {
+      if (this.owner == null) {
+        throw new IllegalStateException("transient used after persistent() call");
+      }
+    }
+  }
+
+  /**
+   * An editor appending text to the end of a rope, meant for append-heavy uses such as
+   * streaming log lines onto a document. Appended chars are written into a tail buffer of
+   * up to {@link Node#MAX_LEAF} chars, which is sealed into the tree as a single leaf once
+   * it is full, so that appending costs amortized O(1) per char however short the appended
+   * strings are. {@link #snapshot()} returns the rope appended so far, which is immutable:
+   * the appends that follow never change the chars it holds, see {@link #snapshot()}. An
+   * appender is not thread safe.
+   *
+   * <pre>
+   *   Rope.Appender log = Rope.from("").asAppender();
+   *   log.append("started\n").append(line).append('\n');
+   *   Rope contents = log.snapshot();
+   * </pre>
+   */
+  public static final class Appender implements Appendable {
+
+    // the sealed text, or null if there is none
+    private Node tree;
+    private char[] tail = new char[MAX_LEAF];
+    private CharBuffer tailView = CharBuffer.wrap(this.tail);
+    private int tailLength;
+    private int tailNewlineCount;
+    // whether a snapshot taken since the tail buffer was started may view it
+    private boolean shared;
+    // the last snapshot, as long as nothing was appended since
+    private Rope snapshot;
+
+    private Appender(Node tree) {
+      this.tree = tree.getLength() == 0 ? null : tree;
+    }
+
+    public int length() {
+      return (this.tree == null ? 0 : this.tree.getLength()) + this.tailLength;
+    }
+
+    @Override public Appender append(CharSequence s) {
+      return this.append(s, 0, s.length());
+    }
+
+    /** Appends the range [start, end) of {@code s}. */
+    @Override public Appender append(CharSequence s, int start, int end) {
+      if (start < 0 || end > s.length() || start > end) {
+        throw new IllegalArgumentException(
+            "[" + start + ", " + end + ") range is out of bounds for char sequence");
+      }
+      if (s instanceof Rope && end - start > MAX_LEAF) {
+        // share the nodes of the rope rather than copying its chars
+        this.seal(this.tailLength);
+        this.pushNode(((Rope) s).slice(start, end).normalize().root);
+        return this;
+      }
+      while (start < end) {
+        int count = Math.min(end - start, MAX_LEAF - this.tailLength);
+        if (s instanceof String) {
+          ((String) s).getChars(start, start + count, this.tail, this.tailLength);
+        } else {
+          for (int i = 0; i < count; i++) {
+            this.tail[this.tailLength + i] = s.charAt(start + i);
+          }
+        }
+        this.appendToTail(count);
+        start += count;
+      }
+      return this;
+    }
+
+    @Override public Appender append(char c) {
+      this.tail[this.tailLength] = c;
+      this.appendToTail(1);
+      return this;
+    }
+
+    /**
+     * Returns the rope appended so far, made of the sealed tree with the tail concatenated
+     * to it, and cached until the next append. Concatenating the tail rebuilds the right
+     * edge of the tree, so that a snapshot costs O(log n), and shares the other subtrees
+     * of the sealed tree. Its last leaf is a view of the tail buffer only if the tail is
+     * concatenated as a leaf of its own, i.e. if neither the tail nor the last sealed leaf
+     * is shorter than {@link Node#MIN_LEAF}: appends then only write past the chars of the
+     * view, and sealing hands the buffer over to the tree rather than reusing it. Otherwise
+     * the tail is merged with the last sealed leaf into a new leaf, and the snapshot does
+     * not share the buffer at all.
+     */
+    public Rope snapshot() {
+      if (this.snapshot == null) {
+        Node node = this.tree;
+        if (this.tailLength > 0) {
+          Node leaf = Node.fromLeaf(
+              new Leaf.Tail(this.tail, this.tailLength), this.tailLength, this.tailNewlineCount);
+          node = node == null ? leaf : Node.concat(node, leaf);
+          this.shared = true;
+        }
+        this.snapshot = node == null ? Rope.from("") : Rope.fromNode(node);
+      }
+      return this.snapshot;
+    }
+
+    // counts the newlines of the count chars just written past the tail, seals it if full
+    private void appendToTail(int count) {
+      int end = this.tailLength + count;
+      this.tailNewlineCount += Util.countNewlines(this.tailView, this.tailLength, end);
+      if (this.tailLength > 0 && this.tail[this.tailLength - 1] == '\r'
+          && this.tail[this.tailLength] == '\n') {
+        // the "\r\n" is a single line break
+        this.tailNewlineCount--;
+      }
+      this.tailLength = end;
+      this.snapshot = null;
+      if (end == MAX_LEAF) {
+        // keep a surrogate pair together, in the next leaf
+        this.seal(Character.isHighSurrogate(this.tail[end - 1]) ? end - 1 : end);
+      }
+    }
+
+    // seals the first count chars of the tail into the tree, and moves the rest to the
+    // start of the tail. A buffer the snapshots may view is handed over to the tree, as it
+    // is, and a new one is started, whereas one they do not view is copied and reused.
+    private void seal(int count) {
+      if (count == 0) {
+        return;
+      }
+      if (this.shared) {
+        int newlineCount = Util.countNewlines(this.tailView, 0, count);
+        this.pushNode(Node.fromLeaf(new Leaf.Tail(this.tail, count), count, newlineCount));
+        char[] tail = new char[MAX_LEAF];
+        System.arraycopy(this.tail, count, tail, 0, this.tailLength - count);
+        this.tail = tail;
+        this.tailView = CharBuffer.wrap(tail);
+        this.shared = false;
+      } else {
+        this.pushNode(Node.fromStringPiece(new String(this.tail, 0, count)));
+        System.arraycopy(this.tail, count, this.tail, 0, this.tailLength - count);
+      }
+      this.tailLength -= count;
+      this.tailNewlineCount = Util.countNewlines(this.tailView, 0, this.tailLength);
+    }
+
+    private void pushNode(Node node) {
+      this.tree = this.tree == null ? node : Node.concat(this.tree, node);
+      this.snapshot = null;
+    }
+  }
+
+  // the offset within [start, end) of this rope at which the tree best splits, or -1
+  private int findSplit(int start, int end) {
+    int split = this.root.findSplit(this.start + start, this.start + end);
+    return split < 0 ? -1 : split - this.start;
+  }
+
+  // a view of [start, end) of this rope, sharing its root
+  private Rope view(int start, int end) {
+    return new Rope(this.root, this.start + start, end - start);
+  }
+
+  // Spliterator over the chars or code points of a rope, walking it leaf by leaf.
+  private static final class CharSpliterator implements Spliterator.OfInt {
+    private Rope rope;
+    private final boolean codePoints;
+    private Cursor cursor;
+
+    CharSpliterator(Rope rope, boolean codePoints) {
+      this.rope = rope;
+      this.codePoints = codePoints;
+    }
+
+    private Cursor cursor() {
+      if (this.cursor == null) {
+        this.cursor = this.rope.cursor();
+      }
+      return this.cursor;
+    }
+
+    @Override public boolean tryAdvance(IntConsumer action) {
+      Cursor cursor = this.cursor();
+      if (!cursor.hasNext()) {
+        return false;
+      }
+      char c = cursor.next();
+      if (this.codePoints && Character.isHighSurrogate(c) && cursor.hasNext()) {
+        char low = cursor.next();
+        if (Character.isLowSurrogate(low)) {
+          action.accept(Character.toCodePoint(c, low));
+          return true;
         }
+        cursor.previous();
       }
-      List<List<Node>> stack = new ArrayList<>();
-      while (!s.isEmpty()) {
-        int splitPoint = s.length() > MAX_LEAF ? findLeafSplitForBulk(s) : s.length();
-        Node newNode = Node.fromStringPiece(s.substring(0, splitPoint));
-        s = s.substring(splitPoint);
-        while (true) {
-          Node finalNewNode = newNode;
-          if (stack.size() == 0 ||
-              stack.get(stack.size() - 1)
-                  .stream()
-                  .allMatch(node -> node.getHeight() != finalNewNode.getHeight())) {
-            stack.add(new ArrayList<>());
+      action.accept(c);
+      return true;
+    }
+
+    @Override public void forEachRemaining(IntConsumer action) {
+      Cursor cursor = this.cursor();
+      if (!cursor.hasNext()) {
+        return;
+      }
+      // a high surrogate waiting for the next char, possibly in the next leaf
+      char high = 0;
+      do {
+        CharSequence leaf = cursor.leafChars();
+        for (int i = cursor.offset() - cursor.leafOffset(); i < leaf.length(); i++) {
+          char c = leaf.charAt(i);
+          if (this.codePoints) {
+            if (high != 0) {
+              if (Character.isLowSurrogate(c)) {
+                action.accept(Character.toCodePoint(high, c));
+                high = 0;
+                continue;
+              }
+              action.accept(high);
+              high = 0;
+            }
+            if (Character.isHighSurrogate(c)) {
+              high = c;
+              continue;
+            }
           }
-          stack.get(stack.size() - 1).add(newNode);
-          if (stack.get(stack.size() - 1).size() < MAX_CHILDREN) {
-            break;
+          action.accept(c);
+        }
+      } while (cursor.nextLeaf());
+      if (high != 0) {
+        action.accept(high);
+      }
+      cursor.seek(this.rope.length);
+    }
+
+    @Override public Spliterator.OfInt trySplit() {
+      int position = this.cursor == null ? 0 : this.cursor.offset();
+      int split = this.rope.findSplit(position, this.rope.length);
+      if (split > 0 && this.codePoints
+          && Character.isHighSurrogate(this.rope.charAt(split - 1))
+          && Character.isLowSurrogate(this.rope.charAt(split))) {
+        // keep the surrogate pair together
+        split++;
+      }
+      if (split < 0 || split >= this.rope.length) {
+        return null;
+      }
+      CharSpliterator prefix =
+          new CharSpliterator(this.rope.view(position, split), this.codePoints);
+      this.rope = this.rope.view(split, this.rope.length);
+      this.cursor = null;
+      return prefix;
+    }
+
+    @Override public long estimateSize() {
+      return this.rope.length - (this.cursor == null ? 0 : this.cursor.offset());
+    }
+
+    @Override public int characteristics() {
+      int characteristics = Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE;
+      return this.codePoints
+          ? characteristics
+          : characteristics | Spliterator.SIZED | Spliterator.SUBSIZED;
+    }
+  }
+
+  // Spliterator over the leaves of a rope, split on leaf boundaries only.
+  private static final class ChunkSpliterator implements Spliterator<String> {
+    private Rope rope;
+    private Cursor cursor;
+
+    ChunkSpliterator(Rope rope) {
+      this.rope = rope;
+    }
+
+    // offset of the first leaf not yet streamed
+    private int position() {
+      return this.cursor == null ? 0 : this.cursor.leafOffset() + this.cursor.leafChars().length();
+    }
+
+    @Override public boolean tryAdvance(Consumer<? super String> action) {
+      if (this.cursor == null) {
+        if (this.rope.length == 0) {
+          return false;
+        }
+        this.cursor = this.rope.cursor();
+      } else if (!this.cursor.nextLeaf()) {
+        return false;
+      }
+      action.accept(this.cursor.leaf());
+      return true;
+    }
+
+    @Override public Spliterator<String> trySplit() {
+      int position = this.position();
+      int split = this.rope.findSplit(position, this.rope.length);
+      if (split < 0) {
+        return null;
+      }
+      ChunkSpliterator prefix = new ChunkSpliterator(this.rope.view(position, split));
+      this.rope = this.rope.view(split, this.rope.length);
+      this.cursor = null;
+      return prefix;
+    }
+
+    @Override public long estimateSize() {
+      // leaves are at least MIN_LEAF long, short ropes and the rope ends aside
+      return (this.rope.length - this.position()) / MIN_LEAF + 1;
+    }
+
+    @Override public int characteristics() {
+      return Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE;
+    }
+  }
+
+  // Spliterator over a range of lines of a rope, split near the tree split of the range.
+  private static final class LineSpliterator implements Spliterator<Rope> {
+    private final Rope rope;
+    private int line;
+    private final int end;
+    // positioned at the start of line, once the traversal started
+    private Cursor cursor;
+
+    LineSpliterator(Rope rope, int line, int end) {
+      this.rope = rope;
+      this.line = line;
+      this.end = end;
+    }
+
+    @Override public boolean tryAdvance(Consumer<? super Rope> action) {
+      if (this.line >= this.end) {
+        return false;
+      }
+      if (this.cursor == null) {
+        this.cursor = this.rope.cursor(this.rope.offsetOfLine(this.line));
+      }
+      Cursor cursor = this.cursor;
+      int lineStart = cursor.offset();
+      int lineEnd = this.rope.length;
+      while (cursor.hasNext()) {
+        char c = cursor.next();
+        if (c == '\n' || c == '\r') {
+          lineEnd = cursor.offset() - 1;
+          if (c == '\r' && cursor.hasNext() && cursor.next() != '\n') {
+            cursor.previous();
           }
-          newNode = Node.fromPieces(stack.remove(stack.size() - 1));
+          break;
         }
       }
-      for (List<Node> list : stack) {
-        for (Node node : list) {
-          push(node);
+      this.line++;
+      action.accept(this.rope.slice(lineStart, lineEnd));
+      return true;
+    }
+
+    @Override public Spliterator<Rope> trySplit() {
+      if (this.end - this.line < 2) {
+        return null;
+      }
+      int start = this.rope.offsetOfLine(this.line);
+      int end = this.end < this.rope.lineCount()
+          ? this.rope.offsetOfLine(this.end)
+          : this.rope.length;
+      int split = this.rope.findSplit(start, end);
+      if (split < 0) {
+        return null;
+      }
+      // the line holding the split goes to the suffix
+      int splitLine = this.rope.lineOfOffset(split);
+      if (splitLine <= this.line || splitLine >= this.end) {
+        return null;
+      }
+      LineSpliterator prefix = new LineSpliterator(this.rope, this.line, splitLine);
+      prefix.cursor = this.cursor;
+      this.line = splitLine;
+      this.cursor = null;
+      return prefix;
+    }
+
+    @Override public long estimateSize() {
+      return this.end - this.line;
+    }
+
+    @Override public int characteristics() {
+      return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED
+          | Spliterator.NONNULL | Spliterator.IMMUTABLE;
+    }
+  }
+
+  // The maximum number of leaves a LeafTask builds without forking.
+  private static final int LEAVES_PER_TASK = 256;
+
+  // Builds the leaves between a range of leaf boundaries, forking on halves of the range.
+  private static final class LeafTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final CharSequence s;
+    private final int[] boundaries;
+    private final Node[] leaves;
+    private final int from;
+    private final int to;
+
+    LeafTask(CharSequence s, int[] boundaries, Node[] leaves, int from, int to) {
+      this.s = s;
+      this.boundaries = boundaries;
+      this.leaves = leaves;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override protected void compute() {
+      if (this.to - this.from <= LEAVES_PER_TASK) {
+        for (int i = this.from; i < this.to; i++) {
+          String piece = this.s.subSequence(this.boundaries[i], this.boundaries[i + 1]).toString();
+          this.leaves[i] = Node.fromStringPiece(piece);
         }
+        return;
       }
+      int mid = (this.from + this.to) >>> 1;
+      invokeAll(
+          new LeafTask(this.s, this.boundaries, this.leaves, this.from, mid),
+          new LeafTask(this.s, this.boundaries, this.leaves, mid, this.to));
+    }
+  }
+
+  // The leaf holding a position along with its offset within the root.
+  private static final class Chunk {
+    final CharSequence text;
+    final int start;
+
+    private Chunk(CharSequence text, int start) {
+      this.text = text;
+      this.start = start;
+    }
+
+    static Chunk at(Node node, int position) {
+      int start = 0;
+      while (node.getHeight() > 0) {
+        int i = node.childAt(position - start);
+        start += node.getChildOffset(i);
+        node = node.getChild(i);
+      }
+      return new Chunk(node.getLeafChars(), start);
+    }
+  }
+
+  /** Builder utility to create an instance of Rope. */
+  public static class Builder {
+
+    private Node root;
+
+    public Builder pushRope(Rope rope) {
+      rope.root.subsequence(this, rope.start, rope.start + rope.length);
       return this;
     }
 
+    public Builder pushString(String s) {
+      return pushCharSequence(s, 0, s.length());
+    }
+
+    /** Pushes {@code count} chars of {@code chars} starting at {@code offset}. */
+    public Builder pushChars(char[] chars, int offset, int count) {
+      if (offset < 0 || count < 0 || offset + count > chars.length) {
+        throw new IllegalArgumentException(
+            "[" + offset + ", " + (offset + count) + ") range is out of bounds for chars");
+      }
+      return pushCharSequence(CharBuffer.wrap(chars, offset, count), 0, count);
+    }
+
+    /**
+     * Pushes the range [start, end) of {@code s}. The range is walked once with
+     * offsets, cutting a leaf at a time, and the tree over those leaves is then
+     * built bottom-up one level at a time.
+     */
+    public Builder pushCharSequence(CharSequence s, int start, int end) {
+      if (start < 0 || end > s.length() || start > end) {
+        throw new IllegalArgumentException(
+            "[" + start + ", " + end + ") range is out of bounds for char sequence");
+      }
+      if (start == end) {
+        return this;
+      }
+      if (s instanceof Rope) {
+        Rope rope = (Rope) s;
+        rope.root.subsequence(this, rope.start + start, rope.start + end);
+        return this;
+      }
+      if (end - start <= MAX_LEAF) {
+        return pushShortString(s.subSequence(start, end).toString());
+      }
+      List<Node> leaves = new ArrayList<>((end - start) / MIN_LEAF + 1);
+      while (start < end) {
+        int splitPoint = end - start > MAX_LEAF
+            ? findLeafSplitForBulk(s, start, end)
+            : end - start;
+        leaves.add(Node.fromStringPiece(s.subSequence(start, start + splitPoint).toString()));
+        start += splitPoint;
+      }
+      return push(Node.fromLevel(leaves));
+    }
+
+    /**
+     * Pushes the range [start, end) of {@code s}, which must not be modified meanwhile,
+     * building its leaves in parallel on {@code pool}. The leaf boundaries are found in a
+     * sequential pass, which only reads the chars each split point is searched in, so that
+     * the resulting tree is structurally identical to that of the sequential
+     * {@link #pushCharSequence(CharSequence, int, int)}. Copying the leaves and counting their
+     * newlines, which reads the whole input, is then split across fork/join tasks.
+     */
+    public Builder pushCharSequence(CharSequence s, int start, int end, ForkJoinPool pool) {
+      if (start < 0 || end > s.length() || start > end) {
+        throw new IllegalArgumentException(
+            "[" + start + ", " + end + ") range is out of bounds for char sequence");
+      }
+      if (s instanceof Rope || end - start <= LEAVES_PER_TASK * MAX_LEAF) {
+        return pushCharSequence(s, start, end);
+      }
+      int[] boundaries = new int[(end - start) / MIN_LEAF + 2];
+      int leafCount = 0;
+      boundaries[0] = start;
+      while (start < end) {
+        start += end - start > MAX_LEAF ? findLeafSplitForBulk(s, start, end) : end - start;
+        boundaries[++leafCount] = start;
+      }
+      Node[] leaves = new Node[leafCount];
+      pool.invoke(new LeafTask(s, boundaries, leaves, 0, leafCount));
+      return push(Node.fromLevel(Arrays.asList(leaves)));
+    }
+
     Builder push(Node node) {
       if (this.root == null) {
         this.root = node;
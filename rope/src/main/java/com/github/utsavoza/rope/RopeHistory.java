@@ -0,0 +1,209 @@
+package com.github.utsavoza.rope;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The versions of a document edited over time, for undo and redo. Every edit records the
+ * new version along with the {@link Delta} that produced it, and the versions are kept in
+ * a list, so that undoing, redoing or jumping to any version kept is a lookup. An edit
+ * made after undoing discards the versions that could have been redone.
+ *
+ * <p>The versions of a rope share most of their trees, so a version only costs the memory
+ * of the paths its edits rebuilt. The history keeps an estimate of the memory retained by
+ * all of its versions together, counting the subtrees they share once, see
+ * {@link RopeStats#retainedBytes()}. When an edit takes it past the byte budget, the
+ * oldest versions are evicted, each freeing the memory it does not share with the version
+ * after it. The current version is never evicted.
+ *
+ * <p><strong>Examples:</strong>
+ * <pre>
+ *   RopeHistory history = new RopeHistory(Rope.from("hello world"), 1 &lt;&lt; 20);
+ *   history.replace(0, 5, "goodbye");
+ *   assertEquals(history.undo().toString(), "hello world");
+ *   assertEquals(history.redo().toString(), "goodbye world");
+ * </pre>
+ */
+public final class RopeHistory {
+
+  private final long byteBudget;
+  // the versions kept, oldest first
+  private final List<Version> versions = new ArrayList<>();
+  // the number of the oldest version kept
+  private int firstVersion;
+  // the index of the current version in versions
+  private int current;
+  private long retainedBytes;
+
+  /**
+   * Creates a history whose first version is {@code initial}, which keeps at most about
+   * {@code byteBudget} bytes of versions.
+   */
+  public RopeHistory(Rope initial, long byteBudget) {
+    if (byteBudget < 0) {
+      throw new IllegalArgumentException("negative byte budget " + byteBudget);
+    }
+    this.byteBudget = byteBudget;
+    Version version = new Version(initial, null, initial.addedBytes(null));
+    this.versions.add(version);
+    this.retainedBytes = version.addedBytes;
+  }
+
+  /** Returns the current version of the document. */
+  public Rope current() {
+    return this.versions.get(this.current).rope;
+  }
+
+  /** The number of the current version, the first version being 0. */
+  public int currentVersion() {
+    return this.firstVersion + this.current;
+  }
+
+  /** The number of the oldest version kept. */
+  public int firstVersion() {
+    return this.firstVersion;
+  }
+
+  /** The number of the newest version kept, the current one or one that can be redone. */
+  public int lastVersion() {
+    return this.firstVersion + this.versions.size() - 1;
+  }
+
+  /** Returns the given version of the document, which must be kept. */
+  public Rope version(int version) {
+    return this.versions.get(this.indexOf(version)).rope;
+  }
+
+  /**
+   * Returns the delta that produced the given version from the version before it, or
+   * null for the first version of the history. The version before may have been evicted.
+   */
+  public Delta delta(int version) {
+    return this.versions.get(this.indexOf(version)).delta;
+  }
+
+  /** Applies {@code delta} to the current version, and returns the new current version. */
+  public Rope apply(Delta delta) {
+    return this.commit(delta.apply(this.current()), delta);
+  }
+
+  /**
+   * Replaces the interval [start, end) of the current version with {@code text}, and
+   * returns the new current version.
+   */
+  public Rope replace(int start, int end, String text) {
+    Rope rope = this.current();
+    if (start < 0 || end > rope.length() || start > end) {
+      throw new IllegalArgumentException(
+          "[" + start + ", " + end + ") interval is out of bounds for current version");
+    }
+    Delta delta = new Delta.Builder(rope.length())
+        .replace(Interval.ofClosedOpen(start, end), text)
+        .build();
+    return this.commit(rope.replace(start, end, text), delta);
+  }
+
+  public boolean canUndo() {
+    return this.current > 0;
+  }
+
+  public boolean canRedo() {
+    return this.current < this.versions.size() - 1;
+  }
+
+  /** Moves back to the version before the current one, and returns it. */
+  public Rope undo() {
+    if (!this.canUndo()) {
+      throw new IllegalStateException("no version to undo to");
+    }
+    this.current--;
+    return this.current();
+  }
+
+  /** Moves forward to the version after the current one, and returns it. */
+  public Rope redo() {
+    if (!this.canRedo()) {
+      throw new IllegalStateException("no version to redo to");
+    }
+    this.current++;
+    return this.current();
+  }
+
+  /** Moves to the given version, which must be kept, and returns it. */
+  public Rope jumpTo(int version) {
+    this.current = this.indexOf(version);
+    return this.current();
+  }
+
+  /** An estimate of the bytes of memory retained by the versions kept, their deltas aside. */
+  public long retainedBytes() {
+    return this.retainedBytes;
+  }
+
+  public long byteBudget() {
+    return this.byteBudget;
+  }
+
+  private int indexOf(int version) {
+    if (version < this.firstVersion || version > this.lastVersion()) {
+      throw new IllegalArgumentException(
+          "version " + version + " is out of [" + this.firstVersion + ", "
+              + this.lastVersion() + "] range of versions kept");
+    }
+    return version - this.firstVersion;
+  }
+
+  // records rope as the version after the current one, discarding those that followed it
+  private Rope commit(Rope rope, Delta delta) {
+    while (this.versions.size() > this.current + 1) {
+      this.retainedBytes -= this.versions.remove(this.versions.size() - 1).addedBytes;
+    }
+    Version version = new Version(rope, delta, rope.addedBytes(this.current()));
+    this.versions.add(version);
+    this.current++;
+    this.retainedBytes += version.addedBytes;
+    this.evict();
+    return rope;
+  }
+
+  private void evict() {
+    int evicted = 0;
+    while (this.retainedBytes > this.byteBudget && evicted < this.current) {
+      Version oldest = this.versions.get(evicted);
+      Version next = this.versions.get(evicted + 1);
+      long freedBytes = oldest.rope.addedBytes(next.rope);
+      this.retainedBytes -= freedBytes;
+      // the bytes next shared with oldest are now retained by next alone
+      next.addedBytes += oldest.addedBytes - freedBytes;
+      evicted++;
+    }
+    // cleared at once, as evicting a version at a time would shift the list every time
+    this.versions.subList(0, evicted).clear();
+    this.firstVersion += evicted;
+    this.current -= evicted;
+  }
+
+  @Override public String toString() {
+    return "RopeHistory: {"
+        + "\n\tfirstVersion: " + this.firstVersion
+        + "\n\tcurrentVersion: " + this.currentVersion()
+        + "\n\tlastVersion: " + this.lastVersion()
+        + "\n\tretainedBytes: " + this.retainedBytes
+        + "\n\tbyteBudget: " + this.byteBudget
+        + "\n}";
+  }
+
+  // a version along with the delta which produced it, and the bytes it retains on top of
+  // those of the version before it, or all of its bytes if it is the first version
+  private static final class Version {
+    private final Rope rope;
+    private final Delta delta;
+    private long addedBytes;
+
+    private Version(Rope rope, Delta delta, long addedBytes) {
+      this.rope = rope;
+      this.delta = delta;
+      this.addedBytes = addedBytes;
+    }
+  }
+}
@@ -0,0 +1,350 @@
+package com.github.utsavoza.rope;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.github.utsavoza.rope.Node.MAX_LEAF;
+import static com.github.utsavoza.rope.Node.MIN_CHILDREN;
+import static com.github.utsavoza.rope.Node.MIN_LEAF;
+
+/**
+ * The shape of the tree of a {@link Rope}, to tell a balanced tree of well filled leaves
+ * from one degraded by many edits. The statistics cover the whole tree the rope is a view
+ * of, slices included, as that is the tree its memory is retained by. The retained bytes
+ * are an estimate for a 64-bit JVM with compressed references.
+ *
+ * <p>The counters of the tree operations are global, and only kept if the
+ * {@code com.github.utsavoza.rope.counters} system property is set to true.
+ *
+ * <p><strong>Examples:</strong>
+ * <pre>
+ *   Rope a = Rope.from(text);
+ *   RopeStats stats = a.stats();
+ *   assertTrue(stats.underfullLeafCount() == 0);
+ *   assertTrue(a.replace(0, 1, "x").stats(a).sharedBytes() > 0);
+ * </pre>
+ */
+public final class RopeStats {
+
+  /** The number of buckets of {@link #leafFillHistogram()}. */
+  public static final int LEAF_FILL_BUCKETS = 8;
+
+  static final boolean COUNTING = Boolean.getBoolean("com.github.utsavoza.rope.counters");
+
+  static final LongAdder NODES_ALLOCATED = new LongAdder();
+  static final LongAdder LEAF_MERGES = new LongAdder();
+  static final LongAdder LEAF_SPLITS = new LongAdder();
+  static final LongAdder NODE_MERGES = new LongAdder();
+  static final LongAdder NODE_SPLITS = new LongAdder();
+
+  // the estimated size of a node, its leaf and arrays aside, see Leaf#retainedBytes()
+  private static final int NODE_BYTES = 56;
+
+  private final int height;
+  private int internalNodeCount;
+  private int leafCount;
+  private final int[] leafFillHistogram = new int[LEAF_FILL_BUCKETS];
+  private int underfullLeafCount;
+  private int underfullInternalNodeCount;
+  private long retainedBytes;
+  private long sharedBytes;
+
+  private RopeStats(int height) {
+    this.height = height;
+  }
+
+  /**
+   * Returns the statistics of the tree of {@code root}, counting the bytes it shares with
+   * the tree of {@code other} if it is not null.
+   */
+  static RopeStats of(Node root, Node other) {
+    Set<Object> shared = Collections.newSetFromMap(new IdentityHashMap<>());
+    if (other != null) {
+      collect(other, shared);
+    }
+    RopeStats stats = new RopeStats(root.getHeight());
+    stats.walk(root, true, false, shared);
+    return stats;
+  }
+
+  // adds the nodes and leaves of the tree of node to shared
+  private static void collect(Node node, Set<Object> shared) {
+    if (!shared.add(node)) {
+      return;
+    }
+    if (node.isLeaf()) {
+      shared.add(node.getLeafValue());
+      return;
+    }
+    for (int i = 0; i < node.getChildCount(); i++) {
+      collect(node.getChild(i), shared);
+    }
+  }
+
+  private void walk(Node node, boolean isRoot, boolean isShared, Set<Object> shared) {
+    isShared = isShared || shared.contains(node);
+    long bytes = nodeBytes(node);
+    if (node.isLeaf()) {
+      this.leafCount++;
+      int length = node.getLength();
+      this.leafFillHistogram[Math.min(length * LEAF_FILL_BUCKETS / MAX_LEAF,
+          LEAF_FILL_BUCKETS - 1)]++;
+      if (length < MIN_LEAF && !isRoot) {
+        this.underfullLeafCount++;
+      }
+      Leaf leaf = node.getLeafValue();
+      long leafBytes = leaf.retainedBytes();
+      this.retainedBytes += leafBytes;
+      if (isShared || shared.contains(leaf)) {
+        this.sharedBytes += leafBytes;
+      }
+    } else {
+      int childCount = node.getChildCount();
+      this.internalNodeCount++;
+      if (childCount < MIN_CHILDREN && !isRoot) {
+        this.underfullInternalNodeCount++;
+      }
+      for (int i = 0; i < childCount; i++) {
+        this.walk(node.getChild(i), false, isShared, shared);
+      }
+    }
+    this.retainedBytes += bytes;
+    if (isShared) {
+      this.sharedBytes += bytes;
+    }
+  }
+
+  // the estimated size of node itself, its leaf and its children aside
+  private static long nodeBytes(Node node) {
+    if (node.isLeaf()) {
+      return NODE_BYTES;
+    }
+    // the children and the two arrays of prefix sums
+    int childCount = node.getChildCount();
+    return NODE_BYTES + align(Leaf.ARRAY_HEADER_BYTES + 4L * childCount)
+        + 2 * align(Leaf.ARRAY_HEADER_BYTES + 4L * (childCount + 1));
+  }
+
+  /**
+   * Returns an estimate of the bytes retained by the tree of {@code root} and not by the
+   * tree of {@code base}, or by the whole tree if {@code base} is null. Rather than
+   * collecting either tree, both are walked down one height at a time from their roots, a
+   * node being expanded only as long as it is not found among the nodes of the same height
+   * of the other tree, so that the walk only visits the paths that differ. A subtree moved
+   * under a node of another height by rebalancing is counted as not shared.
+   */
+  static long addedBytes(Node root, Node base) {
+    long bytes = 0;
+    List<Node> added = new ArrayList<>(Collections.singletonList(root));
+    List<Node> removed = new ArrayList<>();
+    if (base != null) {
+      removed.add(base);
+    }
+    while (!added.isEmpty()) {
+      int height = 0;
+      for (Node node : added) {
+        height = Math.max(height, node.getHeight());
+      }
+      Set<Object> baseNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+      List<Node> nextRemoved = new ArrayList<>();
+      for (Node node : removed) {
+        if (node.getHeight() > height) {
+          addChildren(node, nextRemoved);
+        } else if (node.getHeight() == height) {
+          baseNodes.add(node);
+          if (node.isLeaf()) {
+            baseNodes.add(node.getLeafValue());
+          }
+        } else {
+          nextRemoved.add(node);
+        }
+      }
+      Set<Object> matched = Collections.newSetFromMap(new IdentityHashMap<>());
+      List<Node> nextAdded = new ArrayList<>();
+      for (Node node : added) {
+        if (node.getHeight() < height) {
+          nextAdded.add(node);
+        } else if (baseNodes.contains(node)) {
+          matched.add(node);
+        } else {
+          bytes += nodeBytes(node);
+          if (node.isLeaf()) {
+            Leaf leaf = node.getLeafValue();
+            bytes += baseNodes.contains(leaf) ? 0 : leaf.retainedBytes();
+          } else {
+            addChildren(node, nextAdded);
+          }
+        }
+      }
+      for (Object node : baseNodes) {
+        if (node instanceof Node && !matched.contains(node)) {
+          addChildren((Node) node, nextRemoved);
+        }
+      }
+      added = nextAdded;
+      removed = nextRemoved;
+    }
+    return bytes;
+  }
+
+  private static void addChildren(Node node, List<Node> nodes) {
+    if (node.isLeaf()) {
+      return;
+    }
+    for (int i = 0; i < node.getChildCount(); i++) {
+      nodes.add(node.getChild(i));
+    }
+  }
+
+  // rounds up to the 8 byte alignment of objects
+  static long align(long bytes) {
+    return (bytes + 7) & ~7L;
+  }
+
+  /** The height of the tree, 0 for a single leaf. */
+  public int height() {
+    return this.height;
+  }
+
+  public int internalNodeCount() {
+    return this.internalNodeCount;
+  }
+
+  public int leafCount() {
+    return this.leafCount;
+  }
+
+  /**
+   * The number of leaves by length, bucket {@code i} counting the leaves of
+   * {@code i * MAX_LEAF / LEAF_FILL_BUCKETS} chars and more. The leaves of a balanced
+   * tree, of {@code MIN_LEAF} to {@code MAX_LEAF} chars, fall in the upper half.
+   */
+  public int[] leafFillHistogram() {
+    return this.leafFillHistogram.clone();
+  }
+
+  /** The number of leaves shorter than {@code MIN_LEAF} chars, a lone root leaf aside. */
+  public int underfullLeafCount() {
+    return this.underfullLeafCount;
+  }
+
+  /** The number of internal nodes, the root aside, with fewer than MIN_CHILDREN children. */
+  public int underfullInternalNodeCount() {
+    return this.underfullInternalNodeCount;
+  }
+
+  /** An estimate of the bytes of memory retained by the tree. */
+  public long retainedBytes() {
+    return this.retainedBytes;
+  }
+
+  /**
+   * An estimate of the bytes of memory retained by the tree that are also retained by the
+   * tree of the rope these statistics were compared with, see {@link Rope#stats(Rope)}.
+   */
+  public long sharedBytes() {
+    return this.sharedBytes;
+  }
+
+  /** Returns the current values of the global counters of the tree operations. */
+  public static Counters counters() {
+    return new Counters(
+        NODES_ALLOCATED.sum(),
+        LEAF_MERGES.sum(),
+        LEAF_SPLITS.sum(),
+        NODE_MERGES.sum(),
+        NODE_SPLITS.sum());
+  }
+
+  /** Resets the global counters of the tree operations to zero. */
+  public static void resetCounters() {
+    NODES_ALLOCATED.reset();
+    LEAF_MERGES.reset();
+    LEAF_SPLITS.reset();
+    NODE_MERGES.reset();
+    NODE_SPLITS.reset();
+  }
+
+  // increments counter if the counters are kept
+  static void count(LongAdder counter) {
+    if (COUNTING) {
+      counter.increment();
+    }
+  }
+
+  @Override public String toString() {
+    return "RopeStats: {"
+        + "\n\theight: " + this.height
+        + "\n\tinternalNodeCount: " + this.internalNodeCount
+        + "\n\tleafCount: " + this.leafCount
+        + "\n\tleafFillHistogram: " + Arrays.toString(this.leafFillHistogram)
+        + "\n\tunderfullLeafCount: " + this.underfullLeafCount
+        + "\n\tunderfullInternalNodeCount: " + this.underfullInternalNodeCount
+        + "\n\tretainedBytes: " + this.retainedBytes
+        + "\n\tsharedBytes: " + this.sharedBytes
+        + "\n}";
+  }
+
+  /**
+   * A snapshot of the global counters of the tree operations, all zero unless the
+   * {@code com.github.utsavoza.rope.counters} system property is set to true.
+   */
+  public static final class Counters {
+
+    private final long nodesAllocated;
+    private final long leafMerges;
+    private final long leafSplits;
+    private final long nodeMerges;
+    private final long nodeSplits;
+
+    private Counters(
+        long nodesAllocated, long leafMerges, long leafSplits, long nodeMerges,
+        long nodeSplits) {
+      this.nodesAllocated = nodesAllocated;
+      this.leafMerges = leafMerges;
+      this.leafSplits = leafSplits;
+      this.nodeMerges = nodeMerges;
+      this.nodeSplits = nodeSplits;
+    }
+
+    /** The number of nodes created, copies included. */
+    public long nodesAllocated() {
+      return this.nodesAllocated;
+    }
+
+    /** The number of pairs of short leaves merged into one when concatenating. */
+    public long leafMerges() {
+      return this.leafMerges;
+    }
+
+    /** The number of merged leaves split again as they exceeded MAX_LEAF chars. */
+    public long leafSplits() {
+      return this.leafSplits;
+    }
+
+    /** The number of sibling lists merged under a single node when concatenating. */
+    public long nodeMerges() {
+      return this.nodeMerges;
+    }
+
+    /** The number of merged sibling lists split again as they exceeded MAX_CHILDREN. */
+    public long nodeSplits() {
+      return this.nodeSplits;
+    }
+
+    @Override public String toString() {
+      return "Counters: {"
+          + "\n\tnodesAllocated: " + this.nodesAllocated
+          + "\n\tleafMerges: " + this.leafMerges
+          + "\n\tleafSplits: " + this.leafSplits
+          + "\n\tnodeMerges: " + this.nodeMerges
+          + "\n\tnodeSplits: " + this.nodeSplits
+          + "\n}";
+    }
+  }
+}
@@ -0,0 +1,206 @@
+package com.github.utsavoza.rope;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Substring search over the leaves of a {@link Rope}, with the Boyer-Moore-Horspool
+ * algorithm. The text is read through a {@link Rope.Cursor}, so that it is never copied,
+ * and a match may span any number of leaves. The shifts are kept in a table indexed by the
+ * low byte of the chars, each entry holding the smallest shift of the chars sharing it,
+ * which keeps the table small whatever the alphabet at the cost of shorter shifts on
+ * collisions. A search is not thread safe, whereas the rope it reads is.
+ */
+final class Search {
+
+  private static final int TABLE_SIZE = 256;
+  private static final int TABLE_MASK = TABLE_SIZE - 1;
+
+  private final Rope rope;
+  private final String pattern;
+  // shifts of the window on the char under its last position, searching forward
+  private final int[] shifts;
+  // shifts of the window on the char under its first position, searching backward
+  private final int[] backwardShifts;
+
+  private final Rope.Cursor cursor;
+
+  Search(Rope rope, CharSequence pattern) {
+    this.rope = rope;
+    this.pattern = pattern.toString();
+    this.shifts = new int[TABLE_SIZE];
+    this.backwardShifts = new int[TABLE_SIZE];
+    int m = this.pattern.length();
+    Arrays.fill(this.shifts, m);
+    Arrays.fill(this.backwardShifts, m);
+    for (int i = 0; i < m - 1; i++) {
+      this.shifts[this.pattern.charAt(i) & TABLE_MASK] = m - 1 - i;
+    }
+    for (int i = m - 1; i > 0; i--) {
+      this.backwardShifts[this.pattern.charAt(i) & TABLE_MASK] = i;
+    }
+    this.cursor = rope.cursor();
+  }
+
+  /**
+   * Returns the offset of the first occurrence of the pattern starting at or after
+   * {@code from}, or -1, with the semantics of {@link String#indexOf(String, int)}.
+   */
+  int indexOf(int from) {
+    int m = this.pattern.length();
+    int n = this.rope.length();
+    int position = Math.max(from, 0);
+    if (m == 0) {
+      return Math.min(position, n);
+    }
+    if (m == 1) {
+      return this.indexOfChar(position);
+    }
+    char last = this.pattern.charAt(m - 1);
+    while (position <= n - m) {
+      char c = this.charAt(position + m - 1);
+      if (c == last && this.matchesAt(position)) {
+        return position;
+      }
+      position += this.shifts[c & TABLE_MASK];
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the offset of the last occurrence of the pattern starting at or before
+   * {@code from}, or -1, with the semantics of {@link String#lastIndexOf(String, int)}.
+   */
+  int lastIndexOf(int from) {
+    int m = this.pattern.length();
+    int position = Math.min(from, this.rope.length() - m);
+    if (m == 0) {
+      return Math.max(position, -1);
+    }
+    if (m == 1) {
+      return this.lastIndexOfChar(position);
+    }
+    char first = this.pattern.charAt(0);
+    while (position >= 0) {
+      char c = this.charAt(position);
+      if (c == first && this.matchesAt(position)) {
+        return position;
+      }
+      position -= this.backwardShifts[c & TABLE_MASK];
+    }
+    return -1;
+  }
+
+  /** Returns a lazy stream of the offsets of the non-overlapping occurrences. */
+  IntStream findAll() {
+    if (this.pattern.isEmpty()) {
+      throw new IllegalArgumentException("Attempting to find all occurrences of empty string");
+    }
+    PrimitiveIterator.OfInt iterator = new PrimitiveIterator.OfInt() {
+      // the offset from which the next occurrence is searched for, or -1 past the last one
+      private int from;
+      private int next = -1;
+
+      @Override public boolean hasNext() {
+        if (this.next < 0 && this.from >= 0) {
+          this.next = Search.this.indexOf(this.from);
+          this.from = this.next < 0 ? -1 : this.next + Search.this.pattern.length();
+        }
+        return this.next >= 0;
+      }
+
+      @Override public int nextInt() {
+        if (!this.hasNext()) {
+          throw new NoSuchElementException();
+        }
+        int match = this.next;
+        this.next = -1;
+        return match;
+      }
+    };
+    return StreamSupport.intStream(
+        Spliterators.spliteratorUnknownSize(
+            iterator, Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL),
+        false);
+  }
+
+  // a single char is searched for leaf by leaf, as there is nothing to skip
+  private int indexOfChar(int from) {
+    if (from >= this.rope.length()) {
+      return -1;
+    }
+    char c = this.pattern.charAt(0);
+    this.cursor.seek(from);
+    int offset = from - this.cursor.leafOffset();
+    do {
+      int index = indexOf(this.cursor.leafChars(), c, offset);
+      if (index >= 0) {
+        return this.cursor.leafOffset() + index;
+      }
+      offset = 0;
+    } while (this.cursor.nextLeaf());
+    return -1;
+  }
+
+  private int lastIndexOfChar(int from) {
+    if (from < 0) {
+      return -1;
+    }
+    char c = this.pattern.charAt(0);
+    this.cursor.seek(from);
+    int offset = from - this.cursor.leafOffset();
+    do {
+      int index = lastIndexOf(this.cursor.leafChars(), c, offset);
+      if (index >= 0) {
+        return this.cursor.leafOffset() + index;
+      }
+      offset = Integer.MAX_VALUE;
+    } while (this.cursor.previousLeaf());
+    return -1;
+  }
+
+  // String.indexOf on String leaves, whose chars other leaves are scanned for one by one
+  private static int indexOf(CharSequence leaf, char c, int from) {
+    if (leaf instanceof String) {
+      return ((String) leaf).indexOf(c, from);
+    }
+    for (int i = from; i < leaf.length(); i++) {
+      if (leaf.charAt(i) == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int lastIndexOf(CharSequence leaf, char c, int from) {
+    if (leaf instanceof String) {
+      return ((String) leaf).lastIndexOf(c, from);
+    }
+    for (int i = Math.min(from, leaf.length() - 1); i >= 0; i--) {
+      if (leaf.charAt(i) == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // whether the pattern occurs at position, comparing from its end as Horspool does
+  private boolean matchesAt(int position) {
+    for (int i = this.pattern.length() - 1; i >= 0; i--) {
+      if (this.charAt(position + i) != this.pattern.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // seeking within the leaf of the last char read is O(1)
+  private char charAt(int index) {
+    return this.cursor.seek(index).next();
+  }
+}
@@ -14,10 +14,43 @@ final class Util {
 
   static final String NEW_LINE = "\r\n|\r|\n";
 
+  private static final char ZERO_WIDTH_JOINER = '\u200D';
+
+  // an odd multiplier, the 64 bit FNV prime
+  private static final long HASH_BASE = 0x100000001B3L;
+
   private Util() {
     throw new AssertionError("no instances");
   }
 
+  /**
+   * Extends the polynomial content hash {@code hash} of a text with the chars of
+   * {@code s} in [start, end). The hash of a text t is the sum of t[i] * HASH_BASE^(n - 1 - i)
+   * modulo 2^64, so that it only depends on the text and not on how it is split in leaves.
+   */
+  static long contentHash(long hash, CharSequence s, int start, int end) {
+    for (int i = start; i < end; i++) {
+      hash = hash * HASH_BASE + s.charAt(i);
+    }
+    return hash;
+  }
+
+  /**
+   * Returns the content hash of the concatenation of a text hashed to {@code hash} and of
+   * a text of {@code length} chars hashed to {@code nextHash}.
+   */
+  static long concatHash(long hash, long nextHash, int length) {
+    long power = 1;
+    long base = HASH_BASE;
+    for (int n = length; n > 0; n >>>= 1) {
+      if ((n & 1) != 0) {
+        power *= base;
+      }
+      base *= base;
+    }
+    return hash * power + nextHash;
+  }
+
   static int countOccurrence(String s, String pattern) {
     Matcher matcher = Pattern.compile(pattern).matcher(s);
     int newLine = 0;
@@ -27,8 +60,81 @@ final class Util {
     return newLine;
   }
 
-  static boolean isCharBoundary(String s, int index) {
-    return index == 0 || index == s.length() || s.getBytes()[index] >= -0x40;
+  /**
+   * Counts the line breaks in {@code s}, where each of "\r\n", "\r" and "\n" is a single
+   * break, without allocating. The result is the same as that of
+   * {@code countOccurrence(s, NEW_LINE)}. A trailing '\r' is counted as a break of its own,
+   * so callers joining strings must discount it when the next string starts with '\n'.
+   */
+  static int countNewlines(String s) {
+    return countNewlines(s, 0, s.length());
+  }
+
+  /** Counts the line breaks in the range [start, end) of {@code s}. */
+  static int countNewlines(CharSequence s, int start, int end) {
+    int count = 0;
+    for (int i = start; i < end; i++) {
+      char c = s.charAt(i);
+      // a single compare rejects nearly every char of ordinary text
+      if (c <= '\r') {
+        if (c == '\n') {
+          count++;
+        } else if (c == '\r' && (i + 1 == end || s.charAt(i + 1) != '\n')) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Whether {@code index} is a boundary between two Unicode code points of {@code s},
+   * i.e. it does not fall between the high and low surrogate of a supplementary char.
+   */
+  static boolean isCharBoundary(CharSequence s, int index) {
+    return index == 0
+        || index == s.length()
+        || !Character.isHighSurrogate(s.charAt(index - 1))
+        || !Character.isLowSurrogate(s.charAt(index));
+  }
+
+  /**
+   * Whether {@code index} is a boundary between two user-perceived characters of
+   * {@code s}. This is a cheap approximation of the extended grapheme cluster rules:
+   * besides surrogate pairs, it keeps "\r\n", combining marks, variation selectors,
+   * emoji modifiers and zero width joiner sequences together.
+   */
+  static boolean isGraphemeBoundary(CharSequence s, int index) {
+    if (index == 0 || index == s.length()) {
+      return true;
+    }
+    if (!isCharBoundary(s, index)) {
+      return false;
+    }
+    char prev = s.charAt(index - 1);
+    if (prev == '\r') {
+      return s.charAt(index) != '\n';
+    }
+    if (prev == ZERO_WIDTH_JOINER) {
+      return false;
+    }
+    return !isGraphemeExtend(Character.codePointAt(s, index));
+  }
+
+  private static boolean isGraphemeExtend(int codePoint) {
+    if (codePoint < 0x0300) {
+      return false;
+    }
+    switch (Character.getType(codePoint)) {
+      case Character.NON_SPACING_MARK:
+      case Character.ENCLOSING_MARK:
+      case Character.COMBINING_SPACING_MARK:
+        return true;
+      default:
+        return codePoint == ZERO_WIDTH_JOINER
+            || (codePoint >= 0xFE00 && codePoint <= 0xFE0F)
+            || (codePoint >= 0x1F3FB && codePoint <= 0x1F3FF);
+    }
   }
 
   static String readSampleFile() {
@@ -45,24 +151,38 @@ final class Util {
   }
 
   static int findLeafSplitForMerge(String s) {
-    return findLeafSplit(s, Math.max(MIN_LEAF, s.length() - MAX_LEAF));
+    return findLeafSplit(s, 0, s.length(), Math.max(MIN_LEAF, s.length() - MAX_LEAF));
   }
 
   static int findLeafSplitForBulk(String s) {
-    return findLeafSplit(s, MIN_LEAF);
+    return findLeafSplit(s, 0, s.length(), MIN_LEAF);
   }
 
-  private static int findLeafSplit(String s, int minSplit) {
-    int splitPoint = Math.min(MAX_LEAF, s.length() - MIN_LEAF);
-    int newlineCharIndex = s.substring(minSplit - 1, splitPoint).lastIndexOf('\n');
-    if (newlineCharIndex != -1) {
-      return minSplit + newlineCharIndex;
-    } else {
-      while (!isCharBoundary(s, splitPoint)) {
-        splitPoint -= 1;
+  /**
+   * Returns the length of the next leaf to be cut off the range [start, end) of
+   * {@code s}, without copying the remainder of the range.
+   */
+  static int findLeafSplitForBulk(CharSequence s, int start, int end) {
+    return findLeafSplit(s, start, end, MIN_LEAF);
+  }
+
+  private static int findLeafSplit(CharSequence s, int start, int end, int minSplit) {
+    int splitPoint = Math.min(MAX_LEAF, end - start - MIN_LEAF);
+    for (int i = start + splitPoint - 1; i >= start + minSplit - 1; i--) {
+      if (s.charAt(i) == '\n') {
+        return i + 1 - start;
       }
-      return splitPoint;
     }
+    for (int i = start + splitPoint; i >= start + minSplit; i--) {
+      if (isGraphemeBoundary(s, i)) {
+        return i - start;
+      }
+    }
+    // an unusually long cluster, settle for not splitting a surrogate pair
+    while (!isCharBoundary(s, start + splitPoint)) {
+      splitPoint -= 1;
+    }
+    return splitPoint;
   }
 
   static Ordering compare(int num1, int num2) {
@@ -0,0 +1,129 @@
+package com.github.utsavoza.rope;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeltaTest {
+
+  @Test public void testApply() {
+    Rope a = Rope.from("hello world");
+    Delta delta = new Delta.Builder(a.length())
+        .insert(11, "!")
+        .replace(Interval.ofClosedOpen(0, 5), "goodbye")
+        .delete(Interval.ofOpenClosed(5, 5))
+        .build();
+    assertEquals("goodbye world!", delta.apply(a).toString());
+    assertEquals("hello world", a.toString());
+    assertEquals(14, delta.newLength());
+
+    Delta insertions = new Delta.Builder(a.length())
+        .insert(5, ",")
+        .insert(5, " there")
+        .replace(Interval.ofClosedClosed(5, 5), "")
+        .build();
+    assertEquals("hello, thereworld", insertions.apply(a).toString());
+  }
+
+  @Test public void testApplyLargeRope() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      sb.append("line ").append(i).append('\n');
+    }
+    String text = sb.toString();
+    Delta.Builder builder = new Delta.Builder(text.length());
+    StringBuilder expected = new StringBuilder(text);
+    for (int offset = text.length() - 7; offset > 0; offset -= 1000) {
+      builder.replace(Interval.ofClosedOpen(offset, offset + 3), "<>");
+      expected.replace(offset, offset + 3, "<>");
+    }
+    assertEquals(expected.toString(), builder.build().apply(Rope.from(text)).toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testOverlappingEdits() {
+    new Delta.Builder(11)
+        .replace(Interval.ofClosedOpen(0, 5), "a")
+        .replace(Interval.ofClosedOpen(4, 6), "b")
+        .build();
+  }
+
+  @Test public void testTransform() {
+    Delta delta = new Delta.Builder(11)
+        .replace(Interval.ofClosedOpen(2, 5), "ab")
+        .insert(8, "xyz")
+        .build();
+    assertEquals(1, delta.transform(1, false));
+    assertEquals(2, delta.transform(2, false));
+    assertEquals(4, delta.transform(2, true));
+    assertEquals(2, delta.transform(3, false));
+    assertEquals(4, delta.transform(5, false));
+    assertEquals(7, delta.transform(8, false));
+    assertEquals(10, delta.transform(8, true));
+    assertEquals(13, delta.transform(11, false));
+  }
+
+  @Test public void testTransformOffsets() {
+    Random random = new Random(7);
+    for (int round = 0; round < 200; round++) {
+      int baseLength = random.nextInt(40);
+      Delta delta = randomDelta(random, baseLength);
+      int[] offsets = new int[random.nextInt(10)];
+      for (int i = 0; i < offsets.length; i++) {
+        offsets[i] = random.nextInt(baseLength + 1);
+      }
+      Arrays.sort(offsets);
+      for (boolean after : new boolean[] {false, true}) {
+        int[] transformed = delta.transform(offsets, after);
+        for (int i = 0; i < offsets.length; i++) {
+          assertEquals(delta.transform(offsets[i], after), transformed[i]);
+        }
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTransformDescendingOffsets() {
+    new Delta.Builder(11).insert(8, "xyz").build().transform(new int[] {5, 2}, false);
+  }
+
+  @Test public void testCompose() {
+    Random random = new Random(42);
+    for (int round = 0; round < 200; round++) {
+      Rope base = Rope.from(randomText(random, random.nextInt(40)));
+      Delta first = randomDelta(random, base.length());
+      Rope middle = first.apply(base);
+      Delta second = randomDelta(random, middle.length());
+      Rope expected = second.apply(middle);
+      Delta composed = first.compose(second);
+      assertEquals(expected.toString(), composed.apply(base).toString());
+      assertEquals(base.length(), composed.baseLength());
+      assertEquals(expected.length(), composed.newLength());
+    }
+    Delta identity = new Delta.Builder(5).build();
+    assertTrue(identity.compose(identity).isIdentity());
+  }
+
+  private static Delta randomDelta(Random random, int baseLength) {
+    Delta.Builder builder = new Delta.Builder(baseLength);
+    int offset = 0;
+    while (offset < baseLength && random.nextInt(4) != 0) {
+      int start = offset + random.nextInt(baseLength - offset + 1);
+      int end = start + random.nextInt(Math.min(4, baseLength - start) + 1);
+      builder.replace(Interval.ofClosedOpen(start, end), randomText(random, random.nextInt(4)));
+      offset = end + 1;
+    }
+    return builder.build();
+  }
+
+  private static String randomText(Random random, int length) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      sb.append((char) ('a' + random.nextInt(26)));
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,87 @@
+package com.github.utsavoza.rope;
+
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DiffTest {
+
+  @Test public void testDiff() {
+    Rope a = Rope.from("hello world");
+    Rope b = Rope.from("hello there, world!");
+    Delta delta = a.diff(b);
+    assertEquals(b, delta.apply(a));
+    assertEquals(2, delta.edits().size());
+    assertEquals(Interval.ofClosedOpen(6, 6), delta.edits().get(0).interval());
+    assertEquals(Rope.from("there, "), delta.edits().get(0).text());
+
+    assertTrue(a.diff(a).isIdentity());
+    assertTrue(a.diff(Rope.from("hello world")).isIdentity());
+    assertEquals(Rope.from(""), a.diff(Rope.from("")).apply(a));
+    assertEquals(a, Rope.from("").diff(a).apply(Rope.from("")));
+  }
+
+  @Test public void testRangeEquals() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 40000; i++) {
+      sb.append("abc");
+    }
+    sb.append("abd");
+    Node root = Node.fromString(sb.toString());
+    int length = sb.length();
+    // the same nodes at different offsets hold different text
+    assertTrue(Diff.rangeEquals(root, 0, root, 3, length - 6));
+    assertTrue(!Diff.rangeEquals(root, 0, root, 3, length - 3));
+    assertTrue(!Diff.rangeEquals(root, 0, root, 1, length - 1));
+
+    Rope rope = Rope.from(sb.toString());
+    root = new Rope.Builder().pushRope(rope).getRootNode();
+    Rope edited = rope.replace(60000, 60003, "abc");
+    Node editedRoot = new Rope.Builder().pushRope(edited).getRootNode();
+    assertTrue(Diff.rangeEquals(root, 0, editedRoot, 0, length));
+    assertEquals(rope, edited);
+    assertEquals(rope.slice(0, 60000), edited.slice(3, 60003));
+  }
+
+  @Test public void testDiffDerivedRopes() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 50000; i++) {
+      sb.append("line ").append(i).append('\n');
+    }
+    Rope a = Rope.from(sb.toString());
+    Rope b = a.replace(123456, 123460, "edited")
+        .replace(7, 8, "")
+        .concat(Rope.from("appended"));
+    b = b.replace(200000, 200000, "inserted");
+    Delta delta = a.diff(b);
+    assertEquals(b.toString(), delta.apply(a).toString());
+    assertEquals(4, delta.edits().size());
+    assertEquals(Interval.ofClosedOpen(7, 8), delta.edits().get(0).interval());
+
+    Delta reverse = b.diff(a);
+    assertEquals(a.toString(), reverse.apply(b).toString());
+  }
+
+  @Test public void testDiffRandomEdits() {
+    Random random = new Random(42);
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      sb.append((char) ('a' + random.nextInt(4)));
+    }
+    Rope a = Rope.from(sb.toString());
+    for (int round = 0; round < 50; round++) {
+      Rope b = a;
+      for (int i = random.nextInt(5); i >= 0; i--) {
+        int start = random.nextInt(b.length());
+        int end = Math.min(b.length(), start + random.nextInt(50));
+        b = b.replace(start, end, "xyz".substring(random.nextInt(3)));
+      }
+      assertEquals(b.toString(), a.diff(b).apply(a).toString());
+      Rope c = Rope.from(b.toString());
+      assertEquals(c.toString(), a.diff(c).apply(a).toString());
+      assertEquals(a.toString(), c.diff(a).apply(c).toString());
+    }
+  }
+}
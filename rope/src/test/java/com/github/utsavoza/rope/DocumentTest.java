@@ -0,0 +1,111 @@
+package com.github.utsavoza.rope;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DocumentTest {
+
+  private static final int WRITERS = 4;
+  private static final int READERS = 4;
+  private static final int EDITS = 2000;
+  private static final int TAG_LENGTH = 3;
+
+  @Test public void testEdits() {
+    Document document = new Document(Rope.from("hello world"));
+    Rope snapshot = document.snapshot();
+    assertEquals("goodbye world", document.replace(0, 5, "goodbye").toString());
+    assertEquals("goodbye world!", document.insert(13, "!").toString());
+    assertEquals("goodbye!", document.delete(7, 13).toString());
+    assertEquals("hello world", snapshot.toString());
+
+    Rope current = document.snapshot();
+    assertFalse(document.compareAndSet(snapshot, Rope.from("stale")));
+    assertTrue(document.compareAndSet(current, Rope.from("fresh")));
+    assertEquals("fresh", document.snapshot().toString());
+  }
+
+  @Test public void testInsertAtEnd() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; sb.length() < 2 * Node.MAX_LEAF; i++) {
+      sb.append("line ").append(i).append('\n');
+    }
+    String text = sb.toString();
+    Document document = new Document(Rope.from(text));
+    Rope snapshot = document.snapshot();
+    assertEquals(text + text, document.insert(text.length(), text).toString());
+    assertEquals(text + text + text, document.insert(0, text).toString());
+    assertEquals(text, snapshot.toString());
+  }
+
+  @Test public void testConcurrentEdits() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; sb.length() < 1 << 16; i++) {
+      sb.append("line ").append(i).append('\n');
+    }
+    Document document = new Document(Rope.from(sb.toString()));
+    AtomicBoolean done = new AtomicBoolean();
+    ExecutorService executor = Executors.newFixedThreadPool(WRITERS + READERS);
+    List<Future<?>> writers = new ArrayList<>();
+    List<Future<?>> readers = new ArrayList<>();
+    for (int w = 0; w < WRITERS; w++) {
+      // a tag of chars no other writer inserts and the document does not hold
+      String tag = String.join("", Collections.nCopies(TAG_LENGTH, "" + (char) ('\u2460' + w)));
+      writers.add(executor.submit(() -> {
+        Random random = new Random(tag.hashCode());
+        for (int i = 0; i < EDITS; i++) {
+          int offset = random.nextInt(1 << 10);
+          document.update(rope -> rope.replace(offset, offset, tag));
+        }
+      }));
+    }
+    for (int r = 0; r < READERS; r++) {
+      readers.add(executor.submit(() -> {
+        List<Rope> snapshots = new ArrayList<>();
+        List<String> contents = new ArrayList<>();
+        while (!done.get()) {
+          Rope snapshot = document.snapshot();
+          // a snapshot is never changed by the edits published after it
+          String text = snapshot.toString();
+          assertEquals(text, snapshot.toString());
+          assertEquals(Util.countNewlines(text), snapshot.lineCount() - 1);
+          if (snapshots.size() < 64) {
+            snapshots.add(snapshot);
+            contents.add(text);
+          }
+        }
+        for (int i = 0; i < snapshots.size(); i++) {
+          assertEquals(contents.get(i), snapshots.get(i).toString());
+        }
+      }));
+    }
+    for (Future<?> writer : writers) {
+      writer.get();
+    }
+    done.set(true);
+    for (Future<?> reader : readers) {
+      reader.get();
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+    // no edit was lost: every insert of every writer is in the document
+    String text = document.snapshot().toString();
+    assertEquals(sb.length() + WRITERS * EDITS * TAG_LENGTH, text.length());
+    for (int w = 0; w < WRITERS; w++) {
+      char c = (char) ('\u2460' + w);
+      assertEquals(EDITS * TAG_LENGTH, text.chars().filter(ch -> ch == c).count());
+    }
+  }
+}
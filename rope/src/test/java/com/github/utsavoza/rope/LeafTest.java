@@ -0,0 +1,48 @@
+package com.github.utsavoza.rope;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LeafTest {
+
+  @Test public void testEquals() {
+    Leaf hello = new Leaf("hello");
+    Leaf world = new Leaf("world");
+    assertNotEquals(hello, world);
+
+    Leaf worldCopy = Leaf.of("world");
+    assertEquals(world, worldCopy);
+    assertEquals(world.hashCode(), worldCopy.hashCode());
+
+    Node node = Node.fromStringPiece("world");
+    assertEquals(node, Node.fromLeaf(world, 5, 0));
+    assertNotEquals(node, Node.fromLeaf(hello, 5, 0));
+  }
+
+  @Test public void testLatin1() {
+    String piece = "Löwe, café\r\nnaïve\r";
+    Leaf leaf = new Leaf.Latin1(piece);
+    assertEquals(piece, leaf.get());
+    assertEquals('ö', leaf.charAt(1));
+    assertTrue(leaf.endsWithCarriageReturn());
+    assertTrue(!leaf.startsWithLineFeed());
+    assertEquals(new Leaf(piece), leaf);
+    assertEquals(new Leaf(piece).hashCode(), leaf.hashCode());
+    assertTrue(Leaf.Latin1.isLatin1(piece));
+    assertTrue(!Leaf.Latin1.isLatin1("老虎"));
+  }
+
+  @Test public void testTail() {
+    char[] chars = "hello\r\nworld\r".toCharArray();
+    Leaf leaf = new Leaf.Tail(chars, 6);
+    assertEquals("hello\r", leaf.get());
+    assertEquals('o', leaf.charAt(4));
+    assertTrue(leaf.endsWithCarriageReturn());
+    assertTrue(!leaf.startsWithLineFeed());
+    assertEquals(new Leaf("hello\r"), leaf);
+    assertTrue(new Leaf.Tail(chars, 0).get().isEmpty());
+  }
+}
@@ -0,0 +1,63 @@
+package com.github.utsavoza.rope;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.github.utsavoza.rope.Util.NEW_LINE;
+import static com.github.utsavoza.rope.Util.countOccurrence;
+import static org.junit.Assert.assertEquals;
+
+public class MappedTextTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test public void testFromPath() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      sb.append("Löwe 老虎 Léopard 😀 ").append(i).append(i % 3 == 0 ? "\r\n" : "\n");
+    }
+    String text = sb.toString();
+    assertFromPath(text, StandardCharsets.UTF_8);
+    assertFromPath(text, StandardCharsets.UTF_16LE);
+    assertFromPath(text.replaceAll("[^\\x00-\\xff]", "?"), StandardCharsets.ISO_8859_1);
+  }
+
+  @Test public void testFromPathEmptyFile() throws IOException {
+    File file = folder.newFile();
+    Rope rope = Rope.fromPath(file.toPath(), StandardCharsets.UTF_8);
+    assertEquals("", rope.toString());
+    assertEquals(1, rope.lineCount());
+  }
+
+  @Test public void testFromPathMalformedInput() throws IOException {
+    byte[] bytes = new byte[3 * Node.MAX_LEAF];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) (i % 7 == 0 ? 0xC3 : 'a' + i % 26);
+    }
+    File file = folder.newFile();
+    Files.write(file.toPath(), bytes);
+    Rope rope = Rope.fromPath(file.toPath(), StandardCharsets.UTF_8);
+    assertEquals(new String(bytes, StandardCharsets.UTF_8), rope.toString());
+  }
+
+  private void assertFromPath(String text, Charset charset) throws IOException {
+    File file = folder.newFile();
+    Files.write(file.toPath(), text.getBytes(charset));
+    Rope rope = Rope.fromPath(file.toPath(), charset);
+    assertEquals(text.length(), rope.length());
+    assertEquals(text, rope.toString());
+    assertEquals(countOccurrence(text, NEW_LINE) + 1, rope.lineCount());
+    assertEquals(text.substring(1000, 90000), rope.slice(1000, 90000).toString());
+    assertEquals(text.charAt(54321), rope.charAt(54321));
+
+    Rope edited = rope.replace(20000, 20010, "edited");
+    String expected = text.substring(0, 20000) + "edited" + text.substring(20010);
+    assertEquals(expected, edited.toString());
+  }
+}
@@ -1,16 +1,23 @@
 package com.github.utsavoza.rope;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
 
+import static com.github.utsavoza.rope.Node.MAX_CHILDREN;
 import static com.github.utsavoza.rope.Node.MAX_LEAF;
+import static com.github.utsavoza.rope.Node.MIN_CHILDREN;
+import static com.github.utsavoza.rope.Node.MIN_LEAF;
 import static com.github.utsavoza.rope.Util.NEW_LINE;
 import static com.github.utsavoza.rope.Util.countOccurrence;
 import static com.github.utsavoza.rope.Util.readSampleFile;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 public class NodeTest {
 
@@ -50,14 +57,97 @@ public class NodeTest {
   }
 
   @Test public void testMergeNodes() {
-    Node readme = Node.fromString(text);
-    Node first = Node.fromString(text.substring(0, MAX_LEAF));
-    Node second = Node.fromString(text.substring(MAX_LEAF, 2 * MAX_LEAF));
-    Node third = Node.fromString(text.substring(2 * MAX_LEAF));
+    // three leaves' worth of text without line breaks, so that it splits at MAX_LEAF
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 2 * MAX_LEAF + MIN_LEAF; i++) {
+      sb.append((char) ('a' + i % 26));
+    }
+    String s = sb.toString();
+    Node whole = Node.fromString(s);
+    Node first = Node.fromString(s.substring(0, MAX_LEAF));
+    Node second = Node.fromString(s.substring(MAX_LEAF, 2 * MAX_LEAF));
+    Node third = Node.fromString(s.substring(2 * MAX_LEAF));
     Node parent = Node.mergeNodes(Arrays.asList(first, second), Collections.singletonList(third));
-    assertEquals(parent, readme);
+    assertEquals(parent, whole);
     parent = Node.mergeNodes(Collections.singletonList(first), Arrays.asList(second, third));
-    assertEquals(parent, readme);
+    assertEquals(parent, whole);
+  }
+
+  @Test public void testNewlineCountAcrossLeaves() {
+    Node carriageReturn = Node.fromStringPiece(text.substring(0, MIN_LEAF) + "\r");
+    Node lineFeed = Node.fromStringPiece("\n" + text.substring(0, MIN_LEAF));
+    Node crlf = Node.concat(carriageReturn, lineFeed);
+    String crlfString = carriageReturn.getString() + lineFeed.getString();
+    assertEquals(1, crlf.getHeight());
+    assertEquals(countOccurrence(crlfString, NEW_LINE), crlf.getNewlineCount());
+
+    Node nested = Node.concat(Node.fromString(text + "\r"), Node.fromString("\n" + text));
+    String nestedString = text + "\r\n" + text;
+    assertEquals(nestedString, nested.getString());
+    assertEquals(countOccurrence(nestedString, NEW_LINE), nested.getNewlineCount());
+  }
+
+  @Test public void testLineLookupAcrossChildren() {
+    List<Node> leaves = new ArrayList<>();
+    StringBuilder sb = new StringBuilder();
+    String[] edges = {"\r", "\n", "\r\n", "x"};
+    for (int i = 0; i < 40; i++) {
+      String piece = edges[(i / 4) % 4] + text.substring(0, MIN_LEAF) + edges[i % 4];
+      leaves.add(Node.fromStringPiece(piece));
+      sb.append(piece);
+    }
+    String s = sb.toString();
+    Node root = Node.fromLevel(leaves);
+    assertEquals(Util.countNewlines(s), root.getNewlineCount());
+    int line = 0;
+    for (int i = 0; i <= s.length(); i++) {
+      assertEquals(Util.countNewlines(s, 0, i), root.countNewlinesBefore(i));
+      if (Util.countNewlines(s, 0, i) > line) {
+        line++;
+        boolean crlf = i < s.length() && s.charAt(i - 1) == '\r' && s.charAt(i) == '\n';
+        assertEquals(crlf ? i + 1 : i, root.offsetOfLine(line));
+      }
+    }
+    for (int i = 0; i < s.length(); i += 97) {
+      assertEquals(s.charAt(i), root.charAt(i));
+      int child = root.childAt(i);
+      assertTrue(root.getChildOffset(child) <= i);
+      assertTrue(i < root.getChildOffset(child) + root.getChild(child).getLength());
+    }
+  }
+
+  @Test public void testFromLevel() {
+    List<Node> leaves = new ArrayList<>();
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 83; i++) {
+      String piece = text.substring(0, MIN_LEAF + i);
+      leaves.add(Node.fromStringPiece(piece));
+      sb.append(piece);
+    }
+    Node root = Node.fromLevel(leaves);
+    assertEquals(3, root.getHeight());
+    assertEquals(sb.toString(), root.getString());
+    assertBalanced(root);
+  }
+
+  @Test public void testLatin1Leaf() {
+    String piece = "Löwe, café\r\nnaïve\r";
+    Node node = Node.fromStringPiece(piece);
+    assertEquals('é', node.charAt(9));
+    assertEquals(countOccurrence(piece, NEW_LINE), node.getNewlineCount());
+  }
+
+  private static void assertBalanced(Node node) {
+    if (node.getHeight() == 0) {
+      return;
+    }
+    List<Node> children = node.getChildren();
+    assertTrue(children.size() <= MAX_CHILDREN);
+    for (Node child : children) {
+      assertEquals(node.getHeight() - 1, child.getHeight());
+      assertTrue(child.getHeight() == 0 || child.getChildren().size() >= MIN_CHILDREN);
+      assertBalanced(child);
+    }
   }
 
   @Test public void testConcat() {
@@ -82,4 +172,79 @@ public class NodeTest {
     assertEquals(countOccurrence(text, NEW_LINE), readme.getNewlineCount());
     assertEquals(text, readme.getString());
   }
+
+  @Test public void testLeafCharsReadWithoutStrings() throws IOException {
+    List<CountingLeaf> leaves = new ArrayList<>();
+    List<Node> nodes = new ArrayList<>();
+    for (int i = 0; i < this.text.length(); i += 700) {
+      String piece = this.text.substring(i, Math.min(this.text.length(), i + 700));
+      CountingLeaf leaf = new CountingLeaf(piece);
+      leaves.add(leaf);
+      nodes.add(Node.fromLeaf(leaf, piece.length(), Util.countNewlines(piece)));
+    }
+    Node root = Node.fromLevel(nodes);
+    assertEquals(this.text, root.getString());
+    Node shortLeaf = Node.fromStringPiece("short");
+    assertEquals("short" + this.text.substring(0, 700),
+        Node.mergeLeaves(shortLeaf, nodes.get(0)).getString());
+    assertEquals(this.text.substring(5), root.compact(5, this.text.length()).getString());
+
+    Rope.Builder builder = new Rope.Builder();
+    root.subsequence(builder, 10, 2000);
+    assertEquals(this.text.substring(10, 2000), builder.build().toString());
+    Rope rope = new Rope.Builder().push(root).build();
+    assertEquals(Rope.from(this.text), rope);
+    assertEquals(this.text.indexOf('\n', 1000), rope.indexOf("\n", 1000));
+    StringBuilder out = new StringBuilder();
+    rope.writeTo(out);
+    assertEquals(this.text, out.toString());
+
+    Object owner = new Object();
+    Node owned = root.ownedBy(owner);
+    assertTrue(owned.tryReplaceOwned(5, 8, "xyz", owner));
+    assertEquals(this.text.substring(0, 5) + "xyz" + this.text.substring(8), owned.getString());
+    for (CountingLeaf leaf : leaves) {
+      assertEquals(0, leaf.strings);
+    }
+  }
+
+  // a leaf whose chars are read without its String, counting the Strings built of it
+  private static final class CountingLeaf extends Leaf {
+    private final String chars;
+    int strings;
+
+    CountingLeaf(String chars) {
+      super(null);
+      this.chars = chars;
+    }
+
+    @Override String get() {
+      this.strings++;
+      return this.chars;
+    }
+
+    @Override CharSequence sequence() {
+      return this;
+    }
+
+    @Override public int length() {
+      return this.chars.length();
+    }
+
+    @Override public char charAt(int index) {
+      return this.chars.charAt(index);
+    }
+
+    @Override public CharSequence subSequence(int start, int end) {
+      return this.chars.substring(start, end);
+    }
+
+    @Override boolean startsWithLineFeed() {
+      return this.chars.startsWith("\n");
+    }
+
+    @Override boolean endsWithCarriageReturn() {
+      return this.chars.endsWith("\r");
+    }
+  }
 }
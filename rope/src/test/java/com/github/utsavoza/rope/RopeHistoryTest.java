@@ -0,0 +1,83 @@
+package com.github.utsavoza.rope;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RopeHistoryTest {
+
+  private static String text(int length) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; sb.length() < length; i++) {
+      sb.append("line ").append(i).append('\n');
+    }
+    sb.setLength(length);
+    return sb.toString();
+  }
+
+  @Test public void testUndoRedo() {
+    RopeHistory history = new RopeHistory(Rope.from("hello world"), 1 << 20);
+    assertFalse(history.canUndo());
+    assertEquals("goodbye world", history.replace(0, 5, "goodbye").toString());
+    Delta delta = new Delta.Builder(13).insert(13, "!").build();
+    assertEquals("goodbye world!", history.apply(delta).toString());
+    assertEquals(2, history.currentVersion());
+    assertSame(delta, history.delta(2));
+    assertEquals(null, history.delta(0));
+
+    assertEquals("goodbye world", history.undo().toString());
+    assertEquals("hello world", history.undo().toString());
+    assertFalse(history.canUndo());
+    assertEquals("goodbye world", history.redo().toString());
+    assertEquals("goodbye world!", history.jumpTo(2).toString());
+    assertFalse(history.canRedo());
+    assertEquals("hello world", history.jumpTo(0).toString());
+
+    // an edit after an undo discards the versions that could be redone
+    assertEquals("hello world?", history.replace(11, 11, "?").toString());
+    assertEquals(1, history.currentVersion());
+    assertEquals(1, history.lastVersion());
+    assertFalse(history.canRedo());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testJumpToUnknownVersion() {
+    new RopeHistory(Rope.from("hello"), 1 << 20).jumpTo(1);
+  }
+
+  @Test public void testEviction() {
+    String text = text(1 << 16);
+    Rope initial = Rope.from(text);
+    long budget = initial.stats().retainedBytes() * 4;
+    RopeHistory history = new RopeHistory(initial, budget);
+    List<String> expected = new ArrayList<>();
+    expected.add(text);
+    Random random = new Random(42);
+    for (int i = 0; i < 500; i++) {
+      int start = random.nextInt(history.current().length() - 20);
+      int end = start + random.nextInt(20);
+      String edited = history.replace(start, end, "edit " + i).toString();
+      expected.add(edited);
+      assertTrue(history.retainedBytes() <= budget);
+    }
+    // the versions share their trees, so that many of them fit in four times the first one
+    assertTrue(history.firstVersion() > 0);
+    assertTrue(history.lastVersion() - history.firstVersion() > 20);
+    assertEquals(500, history.currentVersion());
+    for (int version = history.firstVersion(); version <= history.lastVersion(); version++) {
+      assertEquals(expected.get(version), history.version(version).toString());
+    }
+    assertTrue(history.retainedBytes() >= history.current().stats().retainedBytes());
+
+    RopeHistory small = new RopeHistory(initial, 0);
+    small.replace(0, 1, "x");
+    assertEquals(1, small.firstVersion());
+    assertFalse(small.canUndo());
+  }
+}
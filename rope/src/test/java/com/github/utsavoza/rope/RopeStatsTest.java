@@ -0,0 +1,86 @@
+package com.github.utsavoza.rope;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+import static com.github.utsavoza.rope.Node.MAX_LEAF;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RopeStatsTest {
+
+  private static String text(int length) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; sb.length() < length; i++) {
+      sb.append("line ").append(i).append('\n');
+    }
+    sb.setLength(length);
+    return sb.toString();
+  }
+
+  @Test public void testStats() {
+    Rope leaf = Rope.from("hello");
+    RopeStats stats = leaf.stats();
+    assertEquals(0, stats.height());
+    assertEquals(1, stats.leafCount());
+    assertEquals(0, stats.internalNodeCount());
+    assertEquals(0, stats.underfullLeafCount());
+    assertEquals(1, stats.leafFillHistogram()[0]);
+
+    Rope rope = Rope.from(text(1 << 20));
+    stats = rope.stats();
+    assertEquals(new Rope.Builder().pushRope(rope).getRootNode().getHeight(), stats.height());
+    assertEquals(stats.leafCount(), Arrays.stream(stats.leafFillHistogram()).sum());
+    assertEquals(0, stats.underfullLeafCount());
+    assertEquals(0, stats.underfullInternalNodeCount());
+    assertTrue(stats.leafCount() >= (1 << 20) / Node.MAX_LEAF);
+    assertTrue(stats.internalNodeCount() < stats.leafCount());
+    assertTrue(stats.retainedBytes() > (1 << 20));
+    assertEquals(0, stats.sharedBytes());
+  }
+
+  @Test public void testSharedBytes() {
+    Rope rope = Rope.from(text(1 << 20));
+    Rope edited = rope.replace(1000, 1010, "edited");
+    RopeStats stats = edited.stats(rope);
+    assertTrue(stats.sharedBytes() > stats.retainedBytes() * 9 / 10);
+    assertTrue(stats.sharedBytes() < stats.retainedBytes());
+    assertEquals(stats.retainedBytes(), rope.stats(rope).sharedBytes());
+    assertEquals(0, rope.stats(Rope.from(text(1 << 20))).sharedBytes());
+  }
+
+  @Test public void testAddedBytes() {
+    Rope rope = Rope.from(text(1 << 20));
+    assertEquals(rope.stats().retainedBytes(), rope.addedBytes(null));
+    assertEquals(0, rope.addedBytes(rope));
+    Rope edited = rope.replace(1000, 1010, "edited").replace(500000, 500000, "inserted");
+    RopeStats stats = edited.stats(rope);
+    assertEquals(stats.retainedBytes() - stats.sharedBytes(), edited.addedBytes(rope));
+    stats = rope.stats(edited);
+    assertEquals(stats.retainedBytes() - stats.sharedBytes(), rope.addedBytes(edited));
+    Rope other = Rope.from(text(1 << 20));
+    assertEquals(other.stats().retainedBytes(), other.addedBytes(rope));
+  }
+
+  @Test public void testUnderfullLeaves() {
+    // deletes within a leaf shrink it in place, without merging it with its siblings
+    Rope.Transient editor = Rope.from(text(1 << 16)).asTransient();
+    for (int i = 0; i < 90; i++) {
+      editor.delete(MAX_LEAF + 8, MAX_LEAF + 18);
+    }
+    RopeStats stats = editor.persistent().stats();
+    assertEquals(stats.leafCount(), Arrays.stream(stats.leafFillHistogram()).sum());
+    assertEquals(1, stats.underfullLeafCount());
+  }
+
+  @Test public void testCounters() {
+    RopeStats.resetCounters();
+    Node.mergeLeaves(Node.fromStringPiece("hello"), Node.fromStringPiece(" world"));
+    RopeStats.Counters counters = RopeStats.counters();
+    assertEquals(RopeStats.COUNTING ? 1 : 0, counters.leafMerges());
+    assertEquals(0, counters.leafSplits());
+    assertEquals(RopeStats.COUNTING ? 3 : 0, counters.nodesAllocated());
+    RopeStats.resetCounters();
+    assertEquals(0, RopeStats.counters().nodesAllocated());
+  }
+}
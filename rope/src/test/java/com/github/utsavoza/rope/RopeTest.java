@@ -1,6 +1,19 @@
 package com.github.utsavoza.rope;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -8,6 +21,8 @@ import org.junit.Test;
 import static com.github.utsavoza.rope.Util.readSampleFile;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class RopeTest {
 
@@ -28,6 +43,18 @@ public class RopeTest {
     assertEquals(license.toString(), text);
   }
 
+  @Test public void testPushEmptyRange() {
+    Rope rope = Rope.from(this.text);
+    Rope.Builder builder = new Rope.Builder().pushRope(rope);
+    Node root = builder.getRootNode();
+    builder.pushCharSequence(rope, 3, 3)
+        .pushRope(rope.subSequence(5, 5))
+        .pushRope(Rope.from(""))
+        .pushString("");
+    assertSame(root, builder.getRootNode());
+    assertEquals(this.text, builder.build().toString());
+  }
+
   @Test public void testRopeBuilder() {
     Rope rope = new Rope.Builder()
         .pushString("<<")
@@ -49,6 +76,19 @@ public class RopeTest {
         .pushRope(Rope.from("F"))
         .build();
     assertEquals(newRope.toString(), "ABCDEF");
+
+    char[] chars = "<<hello>>".toCharArray();
+    Rope charsRope = new Rope.Builder()
+        .pushChars(chars, 2, 5)
+        .pushCharSequence(new StringBuilder(" world!"), 0, 6)
+        .build();
+    assertEquals(charsRope.toString(), "hello world");
+
+    String largeText = largeText();
+    Rope largeRope = new Rope.Builder()
+        .pushCharSequence(new StringBuilder(largeText), 5, largeText.length() - 5)
+        .build();
+    assertEquals(largeRope.toString(), largeText.substring(5, largeText.length() - 5));
   }
 
   @Test public void testConcat() {
@@ -85,13 +125,326 @@ public class RopeTest {
   @Test public void testSlice() {
     Rope a = Rope.from("hello world");
     Rope b = a.slice(1, 9);
-    assertEquals(b.toString(), "ello wo");
+    assertEquals(b.toString(), "ello wor");
     assertNotEquals(a, b);
 
     Rope readme = Rope.from(text);
     Rope title = readme.slice(0, 4);
     assertEquals(title.toString(), "Rope");
     assertNotEquals(title, readme);
+
+    assertEquals(readme.slice(0, readme.length()).toString(), text);
+    assertEquals(readme.slice(7, 7).toString(), "");
+  }
+
+  @Test public void testSliceLargeRope() {
+    String largeText = largeText();
+    Rope rope = Rope.from(largeText);
+    int[][] intervals = {{0, 1}, {1000, 1030}, {511, 70000}, {12345, largeText.length()}};
+    for (int[] interval : intervals) {
+      Rope slice = rope.slice(interval[0], interval[1]);
+      assertEquals(largeText.substring(interval[0], interval[1]), slice.toString());
+      assertEquals(interval[1] - interval[0], slice.length());
+    }
+    Rope slice = rope.slice(100, 90000).slice(2000, 60000);
+    assertEquals(largeText.substring(2100, 60100), slice.toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSliceOutOfBounds() {
+    Rope.from("hello world").slice(4, 12);
+  }
+
+  @Test public void testReplaceInSlice() {
+    String largeText = largeText();
+    Rope slice = Rope.from(largeText).slice(1000, 60000);
+    String expected = largeText.substring(1000, 60000);
+    assertEquals(expected.substring(0, 10) + "x" + expected.substring(20),
+        slice.replace(10, 20, "x").toString());
+    int length = slice.length();
+    assertEquals(expected + "tail", slice.replace(length, length, "tail").toString());
+    Rope inner = slice.slice(500, 800);
+    assertEquals(expected.substring(500, 600) + expected.substring(700, 800),
+        inner.replace(100, 200, "").toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReplaceOutOfBoundsInSlice() {
+    Rope.from("hello world").slice(2, 9).replace(5, 3, "x");
+  }
+
+  @Test public void testConcatLargeRope() {
+    String largeText = largeText();
+    Rope rope = Rope.from(largeText);
+    assertEquals(largeText, rope.toString());
+    Rope newRope = rope.concat(Rope.from("tail")).concat(rope);
+    assertEquals(largeText + "tail" + largeText, newRope.toString());
+  }
+
+  @Test public void testLines() {
+    Rope a = Rope.from("hello\nworld\r\n\rrope");
+    assertEquals(4, a.lineCount());
+    assertEquals(0, a.offsetOfLine(0));
+    assertEquals(6, a.offsetOfLine(1));
+    assertEquals(13, a.offsetOfLine(2));
+    assertEquals(14, a.offsetOfLine(3));
+    assertEquals(1, a.lineOfOffset(11));
+    assertEquals(1, a.lineOfOffset(12));
+    assertEquals(2, a.lineOfOffset(13));
+    assertEquals("world", a.line(1).toString());
+    assertEquals("", a.line(2).toString());
+    assertEquals("rope", a.line(3).toString());
+    assertEquals(1, Rope.from("").lineCount());
+    assertEquals(2, Rope.from("\n").lineCount());
+  }
+
+  @Test public void testLinesAcrossLeaves() {
+    String largeText = largeText().replace("\n", "\r\n");
+    String crlfText = largeText.substring(0, 4000) + "\r";
+    Rope rope = Rope.from(crlfText)
+        .concat(Rope.from("\n" + largeText.substring(4000)))
+        .concat(Rope.from("\r"));
+    String ropeText = crlfText + "\n" + largeText.substring(4000) + "\r";
+    assertEquals(ropeText, rope.toString());
+    assertLines(ropeText, rope);
+    assertLines(ropeText.substring(3990, 4010), rope.slice(3990, 4010));
+    assertLines(ropeText.substring(4001, 9000), rope.slice(4001, 9000));
+  }
+
+  @Test public void testCharAt() {
+    String largeText = largeText();
+    Rope rope = Rope.from(largeText);
+    for (int i = 0; i < largeText.length(); i += 97) {
+      assertEquals(largeText.charAt(i), rope.charAt(i));
+    }
+    assertEquals(largeText.charAt(5), rope.charAt(5));
+    assertEquals(largeText.charAt(6), rope.charAt(6));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testCharAtOutOfBounds() {
+    Rope.from("hello").charAt(5);
+  }
+
+  @Test public void testCursor() {
+    String largeText = largeText();
+    Rope rope = Rope.from(largeText);
+    Rope.Cursor cursor = rope.cursor();
+    StringBuilder sb = new StringBuilder();
+    while (cursor.hasNext()) {
+      sb.append(cursor.next());
+    }
+    assertEquals(largeText, sb.toString());
+    assertEquals(largeText.length(), cursor.offset());
+
+    sb.setLength(0);
+    while (cursor.hasPrevious()) {
+      sb.append(cursor.previous());
+    }
+    assertEquals(largeText, sb.reverse().toString());
+    assertEquals(0, cursor.offset());
+
+    cursor.seek(30000);
+    assertEquals(largeText.charAt(30000), cursor.next());
+    assertEquals(largeText.charAt(30000), cursor.previous());
+    assertEquals(largeText.charAt(29999), cursor.previous());
+  }
+
+  @Test public void testCursorLeaves() {
+    String largeText = largeText();
+    Rope rope = Rope.from(largeText);
+    Rope.Cursor cursor = rope.cursor();
+    StringBuilder sb = new StringBuilder();
+    do {
+      assertEquals(sb.length(), cursor.leafOffset());
+      sb.append(cursor.leaf());
+    } while (cursor.nextLeaf());
+    assertEquals(largeText, sb.toString());
+
+    sb.setLength(0);
+    do {
+      sb.insert(0, cursor.leaf());
+    } while (cursor.previousLeaf());
+    assertEquals(largeText, sb.toString());
+
+    Rope.Cursor sliceCursor = rope.slice(100, 200).cursor(50);
+    assertEquals(largeText.substring(100, 200), sliceCursor.leaf());
+    assertEquals(largeText.charAt(150), sliceCursor.next());
+  }
+
+  @Test public void testCharSequence() {
+    String largeText = largeText();
+    Rope rope = Rope.from(largeText);
+    Matcher matcher = Pattern.compile("line (\\d*)7\n").matcher(rope);
+    int matches = 0;
+    while (matcher.find()) {
+      assertEquals(largeText.substring(matcher.start(), matcher.end()), matcher.group());
+      matches++;
+    }
+    assertEquals(1000, matches);
+
+    CharSequence subSequence = rope.subSequence(10, 5000);
+    assertEquals(largeText.substring(10, 5000), subSequence.toString());
+    assertEquals(largeText.chars().sum(), rope.chars().sum());
+    assertEquals(largeText, new StringBuilder().append(rope).toString());
+
+    Rope built = new Rope.Builder()
+        .pushCharSequence(rope, 100, 4000)
+        .build();
+    assertEquals(largeText.substring(100, 4000), built.toString());
+  }
+
+  @Test public void testTransient() {
+    String largeText = largeText();
+    Rope rope = Rope.from(largeText);
+    Rope.Transient editor = rope.asTransient();
+    StringBuilder expected = new StringBuilder(largeText);
+    Random random = new Random(7);
+    for (int i = 0; i < 5000; i++) {
+      int start = random.nextInt(expected.length() + 1);
+      int end = Math.min(expected.length(), start + random.nextInt(i % 100 == 0 ? 3000 : 3));
+      String s = i % 3 == 0 ? "" : (i % 7 == 0 ? "\r\n" : "ab");
+      editor.replace(start, end, s);
+      expected.replace(start, end, s);
+    }
+    editor.insert(0, "<<").delete(2, 3);
+    expected.insert(0, "<<").delete(2, 3);
+    assertEquals(expected.length(), editor.length());
+
+    Rope edited = editor.persistent();
+    assertEquals(expected.toString(), edited.toString());
+    assertEquals(Util.countOccurrence(expected.toString(), Util.NEW_LINE), edited.lineCount() - 1);
+    assertEquals(largeText, rope.toString());
+
+    Rope.Transient another = edited.asTransient();
+    another.replace(0, 2, ">>");
+    assertEquals(">>" + expected.substring(2), another.persistent().toString());
+    assertEquals(expected.toString(), edited.toString());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testTransientAfterPersistent() {
+    Rope.Transient editor = Rope.from("hello").asTransient();
+    editor.persistent();
+    editor.insert(0, "a");
+  }
+
+  @Test public void testWriteTo() throws IOException {
+    String largeText = largeText().replace("9", "老虎 😀");
+    Rope rope = Rope.from(largeText);
+
+    StringWriter writer = new StringWriter();
+    rope.writeTo(writer);
+    assertEquals(largeText, writer.toString());
+
+    StringBuilder sb = new StringBuilder();
+    rope.slice(10, 50000).writeTo(sb);
+    assertEquals(largeText.substring(10, 50000), sb.toString());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    rope.writeTo(Channels.newChannel(out), StandardCharsets.UTF_8);
+    assertEquals(largeText, new String(out.toByteArray(), StandardCharsets.UTF_8));
+
+    // a surrogate pair split between two leaves
+    String emoji = "😀";
+    Rope split = Rope.from(largeText.substring(0, 1000) + emoji.charAt(0))
+        .concat(Rope.from(emoji.charAt(1) + largeText.substring(0, 1000)));
+    out.reset();
+    split.writeTo(Channels.newChannel(out), StandardCharsets.UTF_8);
+    assertEquals(split.toString(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+
+    out.reset();
+    Rope.from("").writeTo(Channels.newChannel(out), StandardCharsets.UTF_8);
+    assertEquals(0, out.size());
+  }
+
+  @Test public void testStreams() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      sb.append("Löwe 😀 ").append(i).append(i % 3 == 0 ? "\r\n" : "\n");
+    }
+    String text = sb.toString();
+    Rope rope = Rope.from(text);
+    Rope view = rope.slice(1001, text.length() - 999);
+    String viewText = text.substring(1001, text.length() - 999);
+
+    assertEquals(text.chars().sum(), rope.chars().parallel().sum());
+    assertEquals(viewText.chars().sum(), view.chars().parallel().sum());
+    assertEquals(viewText.length(), view.chars().parallel().count());
+    assertTrue(Arrays.equals(
+        viewText.codePoints().toArray(), view.codePoints().parallel().toArray()));
+    assertEquals(viewText, view.chunks().parallel().collect(Collectors.joining()));
+    assertEquals(
+        view.chunks().collect(Collectors.toList()),
+        view.chunks().parallel().collect(Collectors.toList()));
+
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < view.lineCount(); i++) {
+      lines.add(view.line(i).toString());
+    }
+    assertEquals(
+        lines, view.lines().parallel().map(Rope::toString).collect(Collectors.toList()));
+
+    Spliterator.OfInt chars = view.chars().spliterator();
+    Spliterator.OfInt prefix = chars.trySplit();
+    assertEquals(viewText.length(), prefix.getExactSizeIfKnown() + chars.getExactSizeIfKnown());
+    assertEquals(0, Rope.from("").chunks().count());
+  }
+
+  @Test public void testFromParallel() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 40; i++) {
+      sb.append(largeText()).append(i % 2 == 0 ? "老虎 😀\r" : "\nno newline here ");
+    }
+    String text = sb.toString();
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      Rope rope = Rope.from(text, pool);
+      assertEquals(text, rope.toString());
+      Node parallel = new Rope.Builder()
+          .pushCharSequence(text, 3, text.length() - 3, pool)
+          .getRootNode();
+      Node sequential = new Rope.Builder()
+          .pushCharSequence(text, 3, text.length() - 3)
+          .getRootNode();
+      assertEquals(sequential, parallel);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private static void assertLines(String text, Rope rope) {
+    List<Integer> lineStarts = new ArrayList<>();
+    lineStarts.add(0);
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '\n' || (c == '\r' && (i + 1 == text.length() || text.charAt(i + 1) != '\n'))) {
+        lineStarts.add(i + 1);
+      }
+    }
+    assertEquals(lineStarts.size(), rope.lineCount());
+    int line = 0;
+    for (int offset = 0; offset <= text.length(); offset++) {
+      while (line + 1 < lineStarts.size() && lineStarts.get(line + 1) <= offset) {
+        line++;
+      }
+      assertEquals(line, rope.lineOfOffset(offset));
+    }
+    for (int i = 0; i < lineStarts.size(); i++) {
+      int start = lineStarts.get(i);
+      int end = i + 1 < lineStarts.size() ? lineStarts.get(i + 1) : text.length();
+      assertEquals(start, rope.offsetOfLine(i));
+      String expected = text.substring(start, end).replaceAll("(\r\n|\r|\n)$", "");
+      assertEquals(expected, rope.line(i).toString());
+    }
+  }
+
+  private static String largeText() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      sb.append("line ").append(i).append('\n');
+    }
+    return sb.toString();
   }
 
   @Test public void testEquals() {
@@ -101,4 +454,220 @@ public class RopeTest {
     assertNotEquals(a, b);
     assertEquals(a, c);
   }
+
+  @Test public void testEqualsAcrossLeafSplits() {
+    String text = largeText();
+    Rope rope = Rope.from(text);
+    Rope.Builder builder = new Rope.Builder();
+    for (int i = 0; i < text.length(); i += 700) {
+      builder.pushString(text.substring(i, Math.min(text.length(), i + 700)));
+    }
+    Rope rebuilt = builder.build();
+    assertNotEquals(
+        new Rope.Builder().pushRope(rope).getRootNode(),
+        new Rope.Builder().pushRope(rebuilt).getRootNode());
+    assertEquals(rope, rebuilt);
+    assertEquals(rope.hashCode(), rebuilt.hashCode());
+
+    Rope slice = rope.slice(1234, 56789);
+    Rope otherSlice = rebuilt.concat(Rope.from("tail")).slice(1234, 56789);
+    assertEquals(Rope.from(text.substring(1234, 56789)), slice);
+    assertEquals(slice, otherSlice);
+    assertEquals(slice.hashCode(), otherSlice.hashCode());
+
+    Rope edited = rope.replace(40000, 40001, "X");
+    assertNotEquals(rope, edited);
+    assertEquals(rope, edited.replace(40000, 40001, text.substring(40000, 40001)));
+
+    Rope.Transient editor = rope.asTransient();
+    editor.replace(40000, 40001, "X");
+    Rope persistent = editor.persistent();
+    assertEquals(edited, persistent);
+    assertEquals(edited.hashCode(), persistent.hashCode());
+  }
+
+  @Test public void testCompact() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; sb.length() < 1 << 16; i++) {
+      sb.append("line ").append(i).append(i % 7 == 0 ? "\r\n" : "\n");
+    }
+    // deletes within a leaf shrink it in place, too few of them to trigger a compaction
+    Rope.Transient editor = Rope.from(sb.toString()).asTransient();
+    for (int i = 0; i < 90; i++) {
+      editor.delete(Node.MAX_LEAF + 8, Node.MAX_LEAF + 18);
+    }
+    Rope edited = editor.persistent();
+    assertEquals(1, edited.stats().underfullLeafCount());
+    Rope compacted = edited.compact();
+    assertEquals(edited, compacted);
+    assertEquals(edited.lineCount(), compacted.lineCount());
+    RopeStats stats = compacted.stats(edited);
+    assertEquals(0, stats.underfullLeafCount());
+    assertEquals(0, stats.underfullInternalNodeCount());
+    assertTrue(stats.sharedBytes() > 0);
+
+    Rope slice = edited.slice(123, 45678);
+    assertEquals(slice, slice.compact());
+    assertEquals(0, slice.compact().stats().underfullLeafCount());
+    assertEquals(Rope.from("hello"), Rope.from("hello").compact());
+    assertEquals(Rope.from(""), Rope.from("").compact());
+  }
+
+  @Test public void testCompactAutomatically() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; sb.length() < 1 << 18; i++) {
+      sb.append("line ").append(i).append('\n');
+    }
+    String text = sb.toString();
+    Rope.Transient editor = Rope.from(text).asTransient();
+    StringBuilder expected = new StringBuilder(text);
+    Random random = new Random(42);
+    // shrink the leaves in place, leaving a quarter of the text in about as many leaves
+    while (editor.length() > text.length() / 4) {
+      int start = random.nextInt(editor.length() - 100);
+      int end = start + random.nextInt(60);
+      editor.delete(start, end);
+      expected.delete(start, end);
+    }
+    Rope rope = editor.persistent();
+    assertEquals(expected.toString(), rope.toString());
+    assertEquals(0, rope.stats().underfullLeafCount());
+
+    // short slices concatenated into many short leaves
+    Rope.Builder builder = new Rope.Builder();
+    for (int i = 0; i < 500; i++) {
+      builder.pushRope(Rope.from(text).slice(i * 500, i * 500 + 10 + i % 700));
+    }
+    RopeStats stats = builder.build().stats();
+    assertEquals(0, stats.underfullLeafCount());
+    assertEquals(0, stats.underfullInternalNodeCount());
+  }
+
+  @Test public void testAppender() {
+    Rope.Appender appender = Rope.from("header\r").asAppender();
+    StringBuilder expected = new StringBuilder("header\r");
+    List<Rope> snapshots = new ArrayList<>();
+    List<String> expectedSnapshots = new ArrayList<>();
+    Random random = new Random(42);
+    for (int i = 0; i < 3000; i++) {
+      // "\r\n" split across appends, and so across leaves when the tail is sealed
+      String line = i % 3 == 0 ? "\n" : "line " + i + (i % 5 == 0 ? "\r" : "\n");
+      appender.append(line);
+      expected.append(line);
+      if (i % 7 == 0) {
+        appender.append('\uD83D').append('\uDE00');
+        expected.append("\uD83D\uDE00");
+      }
+      if (random.nextInt(10) == 0) {
+        snapshots.add(appender.snapshot());
+        expectedSnapshots.add(expected.toString());
+      }
+    }
+    assertEquals(expected.length(), appender.length());
+    Rope rope = appender.snapshot();
+    assertSame(rope, appender.snapshot());
+    assertEquals(expected.toString(), rope.toString());
+    assertEquals(Rope.from(expected.toString()).lineCount(), rope.lineCount());
+    assertEquals(0, rope.stats().underfullLeafCount());
+    rope.chunks().forEach(chunk ->
+        assertTrue(!Character.isHighSurrogate(chunk.charAt(chunk.length() - 1))));
+    // snapshots are left untouched by later appends
+    for (int i = 0; i < snapshots.size(); i++) {
+      Rope snapshot = snapshots.get(i);
+      assertEquals(expectedSnapshots.get(i), snapshot.toString());
+      assertEquals(Rope.from(expectedSnapshots.get(i)).lineCount(), snapshot.lineCount());
+    }
+
+    Rope.Appender other = Rope.from("").asAppender();
+    assertEquals(Rope.from(""), other.snapshot());
+    other.append("a").append(rope).append(rope, 10, 20).append(new StringBuilder("xyz"));
+    assertEquals("a" + expected + expected.substring(10, 20) + "xyz", other.snapshot().toString());
+  }
+
+  @Test public void testAppendAfterSnapshot() {
+    Rope.Appender appender = Rope.from("").asAppender();
+    appender.append(repeat('a', Node.MAX_LEAF));
+    // a tail long enough to be a leaf of its own, which is a view of the tail buffer
+    appender.append(repeat('b', 599)).append('\r');
+    Rope shared = appender.snapshot();
+    // a tail merged with the last sealed leaf
+    appender.append(repeat('c', Node.MAX_LEAF - 600)).append("\nd");
+    Rope merged = appender.snapshot();
+    appender.append(repeat('e', 3 * Node.MAX_LEAF));
+
+    String expected = repeat('a', Node.MAX_LEAF) + repeat('b', 599) + "\r";
+    assertEquals(expected, shared.toString());
+    assertEquals(2, shared.lineCount());
+    assertEquals(Rope.from(expected).hashCode(), shared.hashCode());
+    expected += repeat('c', Node.MAX_LEAF - 600) + "\nd";
+    assertEquals(expected, merged.toString());
+    assertEquals(3, merged.lineCount());
+    expected += repeat('e', 3 * Node.MAX_LEAF);
+    assertEquals(expected, appender.snapshot().toString());
+  }
+
+  @Test public void testAppenderSealsWithAndWithoutSnapshots() {
+    String text = repeat('x', Node.MAX_LEAF - 1) + "\uD83D\uDE00" + repeat('y', Node.MAX_LEAF)
+        + "\r\n";
+    Rope.Appender appender = Rope.from("").asAppender();
+    // sealed with no snapshot taken, the surrogate pair moving to the start of the buffer
+    appender.append(text);
+    Rope first = appender.snapshot();
+    // sealed while the snapshot views the buffer
+    appender.append(text);
+    Rope second = appender.snapshot();
+    appender.append(text);
+
+    assertEquals(text, first.toString());
+    assertEquals(text + text, second.toString());
+    assertEquals(Rope.from(text + text).lineCount(), second.lineCount());
+    Rope rope = appender.snapshot();
+    assertEquals(text + text + text, rope.toString());
+    assertEquals(Rope.from(text + text + text), rope);
+    rope.chunks().forEach(chunk ->
+        assertTrue(!Character.isHighSurrogate(chunk.charAt(chunk.length() - 1))));
+  }
+
+  @Test public void testBalancedTreeNotCompacted() {
+    // leaves of 600 chars, well under MAX_LEAF but none of them underfull
+    List<Node> leaves = new ArrayList<>();
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 512; i++) {
+      String line = repeat((char) ('a' + i % 26), 599) + "\n";
+      leaves.add(Node.fromStringPiece(line));
+      sb.append(line);
+    }
+    Node root = Node.fromLevel(leaves);
+    assertTrue(!root.isFragmented());
+    Rope rope = Rope.from(sb.toString()).replace(0, 0, "");
+    Rope edited = rope.replace(1000, 1010, "edited");
+    assertEquals(rope.stats().leafCount(), edited.stats().leafCount());
+    RopeStats stats = edited.stats(rope);
+    assertTrue(stats.sharedBytes() > stats.retainedBytes() * 9 / 10);
+  }
+
+  @Test public void testInsertAtEdges() {
+    String a = repeat('a', 600);
+    String b = repeat('b', 600);
+    assertEquals(b + a, Rope.from(a).replace(0, 0, b).toString());
+    assertEquals(a + b, Rope.from(a).replace(600, 600, b).toString());
+
+    // an insert taller than the rope it goes into
+    String text = largeText().substring(0, 5000);
+    String large = largeText();
+    Rope rope = Rope.from(text);
+    assertEquals(large + text, rope.replace(0, 0, large).toString());
+    assertEquals(text + large, rope.replace(text.length(), text.length(), large).toString());
+    assertEquals(text, rope.toString());
+
+    Rope.Transient editor = rope.asTransient();
+    editor.insert(0, b).insert(editor.length(), b);
+    assertEquals(b + text + b, editor.persistent().toString());
+  }
+
+  private static String repeat(char c, int count) {
+    char[] chars = new char[count];
+    Arrays.fill(chars, c);
+    return new String(chars);
+  }
 }
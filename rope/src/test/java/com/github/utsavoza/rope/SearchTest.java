@@ -0,0 +1,77 @@
+package com.github.utsavoza.rope;
+
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SearchTest {
+
+  @Test public void testIndexOf() {
+    Rope rope = Rope.from("hello world, hello rope");
+    assertEquals(0, rope.indexOf("hello"));
+    assertEquals(13, rope.indexOf("hello", 1));
+    assertEquals(-1, rope.indexOf("hello", 14));
+    assertEquals(19, rope.indexOf("rope"));
+    assertEquals(-1, rope.indexOf("ropes"));
+    assertEquals(5, rope.indexOf("", 5));
+    assertEquals(rope.length(), rope.indexOf("", 100));
+    assertEquals(0, rope.indexOf("hello", -3));
+    assertEquals(13, rope.lastIndexOf("hello"));
+    assertEquals(0, rope.lastIndexOf("hello", 12));
+    assertEquals(-1, rope.lastIndexOf("hello", -1));
+    assertEquals(rope.length(), rope.lastIndexOf(""));
+    assertEquals(6, rope.slice(7, 23).indexOf("hello"));
+    assertEquals(-1, rope.slice(0, 17).indexOf("hello", 1));
+  }
+
+  @Test public void testSearchAcrossLeaves() {
+    Random random = new Random(42);
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 100000; i++) {
+      sb.append((char) ('a' + random.nextInt(3)));
+    }
+    String text = sb.toString();
+    Rope rope = Rope.from(text);
+    Rope view = rope.slice(777, text.length() - 333);
+    String viewText = text.substring(777, text.length() - 333);
+    for (int round = 0; round < 200; round++) {
+      int start = random.nextInt(text.length() - 2000);
+      String pattern = text.substring(start, start + 1 + random.nextInt(round < 100 ? 8 : 2000));
+      int from = random.nextInt(text.length());
+      assertEquals(text.indexOf(pattern, from), rope.indexOf(pattern, from));
+      assertEquals(text.lastIndexOf(pattern, from), rope.lastIndexOf(pattern, from));
+      assertEquals(viewText.indexOf(pattern, from), view.indexOf(pattern, from));
+      assertEquals(viewText.lastIndexOf(pattern, from), view.lastIndexOf(pattern, from));
+    }
+  }
+
+  @Test public void testFindAll() {
+    String text = largeText();
+    IntStream.Builder expected = IntStream.builder();
+    for (int i = text.indexOf("line 1"); i >= 0; i = text.indexOf("line 1", i + 6)) {
+      expected.add(i);
+    }
+    assertArrayEquals(expected.build().toArray(), Rope.from(text).findAll("line 1").toArray());
+    assertEquals("0, 2", Rope.from("aaaaa").findAll("aa").limit(2)
+        .mapToObj(Integer::toString).collect(Collectors.joining(", ")));
+    assertEquals(2, Rope.from("aaaaa").findAll("aa").count());
+    assertEquals(0, Rope.from("").findAll("a").count());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testFindAllEmptyString() {
+    Rope.from("hello").findAll("");
+  }
+
+  private static String largeText() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      sb.append("line ").append(i).append('\n');
+    }
+    return sb.toString();
+  }
+}
@@ -2,9 +2,14 @@ package com.github.utsavoza.rope;
 
 import org.junit.Test;
 
+import static com.github.utsavoza.rope.Node.MAX_LEAF;
+import static com.github.utsavoza.rope.Node.MIN_LEAF;
 import static com.github.utsavoza.rope.Util.NEW_LINE;
+import static com.github.utsavoza.rope.Util.countNewlines;
 import static com.github.utsavoza.rope.Util.countOccurrence;
+import static com.github.utsavoza.rope.Util.findLeafSplitForBulk;
 import static com.github.utsavoza.rope.Util.isCharBoundary;
+import static com.github.utsavoza.rope.Util.isGraphemeBoundary;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -16,14 +21,54 @@ public class UtilTest {
     assertEquals(2, countOccurrence("Hello, World\n\n", NEW_LINE));
   }
 
+  @Test public void testCountNewlinesScanner() {
+    String[] samples = {
+        "", "\n", "\r", "\r\n", "\n\r", "a\r\r\nb\n\n\rc", "no breaks", "\r\n\r\n\r"
+    };
+    for (String sample : samples) {
+      assertEquals(countOccurrence(sample, NEW_LINE), countNewlines(sample));
+    }
+  }
+
   @Test public void testIsCharBoundary() {
     String s = "Löwe 老虎 Léopard";
     assertTrue(isCharBoundary(s, 0));
     assertTrue(isCharBoundary(s, 6));
     assertTrue(isCharBoundary(s, s.length()));
-    // second byte of ö
-    assertFalse(isCharBoundary(s, 2));
-    // third byte of 老
-    assertFalse(isCharBoundary(s, 8));
+    // indices are UTF-16 code units, ö and 老 are single chars
+    assertTrue(isCharBoundary(s, 2));
+    assertTrue(isCharBoundary(s, 7));
+
+    String emoji = "a\uD83D\uDE00b";
+    assertTrue(isCharBoundary(emoji, 1));
+    // between the surrogates of U+1F600
+    assertFalse(isCharBoundary(emoji, 2));
+    assertTrue(isCharBoundary(emoji, 3));
+  }
+
+  @Test public void testIsGraphemeBoundary() {
+    assertTrue(isGraphemeBoundary("ab", 1));
+    assertFalse(isGraphemeBoundary("a\r\nb", 2));
+    assertTrue(isGraphemeBoundary("a\r\nb", 3));
+    // e followed by a combining acute accent
+    assertFalse(isGraphemeBoundary("e\u0301", 1));
+    // woman, zero width joiner, laptop
+    String zwj = "\uD83D\uDC69\u200D\uD83D\uDCBB";
+    assertFalse(isGraphemeBoundary(zwj, 1));
+    assertFalse(isGraphemeBoundary(zwj, 2));
+    assertFalse(isGraphemeBoundary(zwj, 3));
+    assertTrue(isGraphemeBoundary(zwj, zwj.length()));
+  }
+
+  @Test public void testFindLeafSplit() {
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() < 2 * MAX_LEAF) {
+      sb.append("e\u0301\uD83D\uDE00");
+    }
+    String s = sb.toString();
+    int splitPoint = findLeafSplitForBulk(s, 0, s.length());
+    assertTrue(splitPoint >= MIN_LEAF && splitPoint <= MAX_LEAF);
+    assertTrue(isGraphemeBoundary(s, splitPoint));
+    assertEquals(s, Rope.from(s).toString());
   }
 }